@@ -0,0 +1,56 @@
+package uk.bl.wa.memento.benchmarks;
+
+/*
+ * #%L
+ * mementoweb-java-client
+ * %%
+ * Copyright (C) 2012 - 2013 The British Library
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dev.memento.Link;
+
+/**
+ * Parsing of a single memento link, as found in a Link: header.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LinkBenchmark {
+
+	private String mLink = "<http://web.archive.org/web/20010724154504/www.harding.edu/fmccown/>;"
+			+ "rel=\"first memento\";datetime=\"Tue, 24 Jul 2001 15:45:04 GMT\"";
+
+	@Benchmark
+	public Link link() {
+		return new Link(mLink);
+	}
+}
@@ -0,0 +1,62 @@
+package uk.bl.wa.memento.benchmarks;
+
+/*
+ * #%L
+ * mementoweb-java-client
+ * %%
+ * Copyright (C) 2012 - 2013 The British Library
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dev.memento.SimpleDateTime;
+
+/**
+ * Parsing and formatting of RFC 1123 dates.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SimpleDateTimeBenchmark {
+
+	private String mDate = "Tue, 24 Jul 2001 15:45:04 GMT";
+
+	private SimpleDateTime mDateTime = new SimpleDateTime(mDate);
+
+	@Benchmark
+	public SimpleDateTime parse() {
+		return new SimpleDateTime(mDate);
+	}
+
+	@Benchmark
+	public String longDateFormatted() {
+		return mDateTime.longDateFormatted();
+	}
+}
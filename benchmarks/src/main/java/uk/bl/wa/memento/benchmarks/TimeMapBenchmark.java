@@ -0,0 +1,98 @@
+package uk.bl.wa.memento.benchmarks;
+
+/*
+ * #%L
+ * mementoweb-java-client
+ * %%
+ * Copyright (C) 2012 - 2013 The British Library
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import dev.memento.Memento;
+import dev.memento.MementoClient;
+import dev.memento.MementoSink;
+import dev.memento.TimeBundle;
+import dev.memento.TimeMap;
+import dev.memento.TimeMapIndex;
+
+/**
+ * Parsing of whole TimeMaps of different sizes.  The Mementos are handed to
+ * a Blackhole rather than collected, so only the parsing is measured.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class TimeMapBenchmark {
+
+	@Param({ "1000", "100000", "1000000" })
+	public int entries;
+
+	private String mTimeMap;
+	private byte[] mTimeMapBytes;
+
+	private MementoClient mClient;
+
+	@Setup
+	public void setup(final Blackhole blackhole) {
+		mTimeMap = TimeMaps.generate(entries);
+		mTimeMapBytes = mTimeMap.getBytes(Charset.forName("ISO-8859-1"));
+
+		mClient = new MementoClient("http://web.archive.org/web/", null);
+		mClient.setMementoSink(new MementoSink() {
+			public void onMemento(Memento memento) {
+				blackhole.consume(memento);
+			}
+			public void onTimeMap(TimeMap timeMap) {
+				blackhole.consume(timeMap);
+			}
+			public void onTimeBundle(TimeBundle timeBundle) {
+				blackhole.consume(timeBundle);
+			}
+			public void onOriginal(String url) {
+				blackhole.consume(url);
+			}
+		});
+	}
+
+	@Benchmark
+	public Memento parseCsvLinks() {
+		return mClient.parseCsvLinks(mTimeMap, true);
+	}
+
+	@Benchmark
+	public TimeMapIndex timeMapIndex() {
+		return TimeMapIndex.parse(mTimeMapBytes, 0, mTimeMapBytes.length);
+	}
+}
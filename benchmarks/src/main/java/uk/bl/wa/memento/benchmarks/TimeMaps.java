@@ -0,0 +1,71 @@
+package uk.bl.wa.memento.benchmarks;
+
+/*
+ * #%L
+ * mementoweb-java-client
+ * %%
+ * Copyright (C) 2012 - 2013 The British Library
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import dev.memento.SimpleDateTime;
+
+/**
+ * Makes synthetic TimeMaps in link-format, shaped like those served by the
+ * Wayback Machine.
+ */
+public class TimeMaps {
+
+	private static final String ORIGINAL = "http://www.harding.edu/fmccown/";
+
+	private TimeMaps() {
+	}
+
+	/**
+	 * @param entries the number of mementos.
+	 * @return a TimeMap with the given number of mementos, one a day from 
+	 * the start of 1996.
+	 */
+	public static String generate(int entries) {
+		StringBuilder timeMap = new StringBuilder(entries * 150 + 400);
+		timeMap.append("<").append(ORIGINAL).append(">;rel=\"original\",\n");
+		timeMap.append("<http://web.archive.org/web/timemap/link/").append(ORIGINAL)
+				.append(">;rel=\"self\";type=\"application/link-format\",\n");
+		timeMap.append("<http://web.archive.org/web/").append(ORIGINAL)
+				.append(">;rel=\"timegate\",\n");
+
+		long epochSecond = new SimpleDateTime(1, 1, 1996).getEpochSecond();
+		for (int i = 0; i < entries; i++) {
+			SimpleDateTime datetime = new SimpleDateTime(epochSecond + i * 86400L + i % 86400);
+			timeMap.append("<http://web.archive.org/web/")
+					.append(timestamp(datetime)).append('/').append(ORIGINAL).append(">;rel=\"");
+			if (i == 0)
+				timeMap.append("first ");
+			else if (i == entries - 1)
+				timeMap.append("last ");
+			timeMap.append("memento\";datetime=\"").append(datetime.longDateFormatted()).append('"');
+			if (i < entries - 1)
+				timeMap.append(",\n");
+		}
+		return timeMap.append('\n').toString();
+	}
+
+	private static String timestamp(SimpleDateTime datetime) {
+		long secondOfDay = Math.abs(datetime.getEpochSecond() % 86400);
+		return String.format("%04d%02d%02d%02d%02d%02d", datetime.getYear(), datetime.getMonth(),
+				datetime.getDay(), secondOfDay / 3600, secondOfDay / 60 % 60, secondOfDay % 60);
+	}
+}
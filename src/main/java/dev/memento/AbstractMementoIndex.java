@@ -0,0 +1,209 @@
+package dev.memento;
+
+/*
+ * #%L
+ * mementoweb-java-client
+ * %%
+ * Copyright (C) 2012 - 2013 The British Library
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+/**
+ * Navigation by date for a {@link MementoIndex}, with binary searches over
+ * {@link #getEpochSecond(int)}.  Subclasses need only provide 
+ * {@link #size()}, {@link #get(int)} and {@link #getEpochSecond(int)}, and 
+ * must keep the mementos in date order.
+ */
+public abstract class AbstractMementoIndex implements MementoIndex {
+
+	static final long SECONDS_PER_DAY = 24 * 60 * 60;
+
+	public Memento getFirst() {
+		if (size() > 0)
+			return get(0);
+		else
+			return null;
+	}
+
+	public Memento getLast() {
+		if (size() > 0)
+			return get(size() - 1);
+		else
+			return null;
+	}
+
+	public Memento getClosestDate(SimpleDateTime date) {
+		long epochSecond = date.getEpochSecond();
+		int i = lowerBound(0, size(), epochSecond);
+
+		if (size() == 0)
+			return null;
+		else if (i == size())
+			return getLast();
+		else if (i == 0 || getEpochSecond(i) == epochSecond)
+			return get(i);
+		else {
+			// See if date is closer to i or i-1
+			long diffInDays1 = (getEpochSecond(i) - epochSecond) / SECONDS_PER_DAY;
+			long diffInDays2 = (epochSecond - getEpochSecond(i - 1)) / SECONDS_PER_DAY;
+			if (diffInDays1 < diffInDays2)
+				return get(i);
+			else
+				return get(i - 1);
+		}
+	}
+
+	public int getIndex(SimpleDateTime datetime) {
+		long epochSecond = datetime.getEpochSecond();
+		int i = lowerBound(0, size(), epochSecond);
+		if (i < size() && getEpochSecond(i) == epochSecond)
+			return i;
+		return -1;
+	}
+
+	public int getIndexByDate(SimpleDateTime date) {
+		long dayStart = SimpleDateTime.floorDiv(date.getEpochSecond(), SECONDS_PER_DAY) * SECONDS_PER_DAY;
+		int i = lowerBound(0, size(), dayStart);
+		if (i < size() && getEpochSecond(i) < dayStart + SECONDS_PER_DAY)
+			return i;
+		return -1;
+	}
+
+	public Memento getNext(SimpleDateTime date) {
+		int i = lowerBound(0, size(), date.getEpochSecond());
+		if (i < size() && getEpochSecond(i) == date.getEpochSecond())
+			i++;
+		return i < size() ? get(i) : null;
+	}
+
+	public Memento getPrevious(SimpleDateTime date) {
+		int i = lowerBound(0, size(), date.getEpochSecond());
+		return i > 0 ? get(i - 1) : null;
+	}
+
+	public boolean isFirst(SimpleDateTime date) {
+		return size() > 0 && getEpochSecond(0) == date.getEpochSecond();
+	}
+
+	public boolean isLast(SimpleDateTime date) {
+		return size() > 0 && getEpochSecond(size() - 1) == date.getEpochSecond();
+	}
+
+	public CharSequence[] getAllDates() {
+		CharSequence[] dates = new CharSequence[size()];
+		for (int i = 0; i < dates.length; i++)
+			dates[i] = get(i).getDateAndTimeFormatted();
+		return dates;
+	}
+
+	/**
+	 * Counts each year with a binary search from its start for the start of
+	 * the next one.
+	 */
+	public TreeMap<Integer,Integer> getAllYears() {
+		TreeMap<Integer,Integer> years = new TreeMap<Integer,Integer>();
+		int i = 0;
+		while (i < size()) {
+			int year = yearOf(getEpochSecond(i));
+			int end = lowerBound(i, size(), startOfMonth(year + 1, 1));
+			years.put(year, end - i);
+			i = end;
+		}
+		return years;
+	}
+
+	public LinkedHashMap<CharSequence,Integer> getMonthsForYear(int year) {
+		LinkedHashMap<CharSequence,Integer> months = new LinkedHashMap<CharSequence,Integer>();
+		String[] monthNames = SimpleDateTime.getMonthNames();
+		int start = lowerBound(0, size(), startOfMonth(year, 1));
+		for (int month = 1; month <= 12; month++) {
+			int end = lowerBound(start, size(), startOfMonth(year, month + 1));
+			if (end > start)
+				months.put(monthNames[month - 1], end - start);
+			start = end;
+		}
+		return months;
+	}
+
+	public MementoCursor cursor() {
+		return new MementoCursor(this);
+	}
+
+	public Iterator<Memento> iterator() {
+		return new Iterator<Memento>() {
+			private int mNext = 0;
+
+			public boolean hasNext() {
+				return mNext < size();
+			}
+
+			public Memento next() {
+				if (mNext >= size())
+					throw new NoSuchElementException();
+				return get(mNext++);
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * Binary search for the first memento at or after the given time.
+	 * @param from
+	 * @param to
+	 * @param epochSecond
+	 * @return the index of the memento, or to if there is none.
+	 */
+	protected int lowerBound(int from, int to, long epochSecond) {
+		int low = from;
+		int high = to;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (getEpochSecond(mid) < epochSecond)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	/**
+	 * @return the month, in GMT, numbered as year * 12 + month - 1.
+	 */
+	static int monthOf(long epochSecond) {
+		return Granularity.MONTH.bucketOf(epochSecond);
+	}
+
+	static int yearOf(long epochSecond) {
+		return Granularity.YEAR.bucketOf(epochSecond);
+	}
+
+	/**
+	 * @param year
+	 * @param month from 1, and may be 13 for January of the next year.
+	 * @return the start of the month in GMT, in seconds since the epoch.
+	 */
+	static long startOfMonth(int year, int month) {
+		return SimpleDateTime.daysFromCivil(year, month, 1) * SECONDS_PER_DAY;
+	}
+}
@@ -0,0 +1,511 @@
+package dev.memento;
+
+/*
+ * #%L
+ * mementoweb-java-client
+ * %%
+ * Copyright (C) 2012 - 2013 The British Library
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.CoderResult;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.client.HttpAsyncClient;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+import org.apache.http.nio.protocol.HttpAsyncResponseConsumer;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Looks up the mementos of a URL at one TimeGate without blocking: the 
+ * TimeGate request, then each TimeMap page, are chained on a non-blocking
+ * HTTP client, so a few I/O threads can keep many lookups in flight.
+ * 
+ * TimeMap pages are parsed as they arrive, a buffer at a time, so that a 
+ * page is never held whole.  The rest of the work, including following 
+ * the TimeGate's Link header, runs on a separate executor, the common 
+ * ForkJoinPool by default, rather than on the I/O threads.  The HTTP
+ * client must have been started, and should not follow redirects, as the
+ * TimeGate's 302 is handled here.
+ * 
+ * Unlike {@link MementoClient}, this keeps no state between lookups, so 
+ * one instance can be used for any number of lookups at once.
+ * 
+ * Requests can be hedged, see 
+ * {@link #setHedging(LatencyTracker, LatencyTracker, double, HedgingBudget)}.
+ */
+public class AsyncMementoClient {
+	static Logger log = LogManager.getLogger(AsyncMementoClient.class.getCanonicalName());
+
+	private final String mTimegateUri;
+	private final HttpAsyncClient mHttpClient;
+	private final Executor mParseExecutor;
+	private String mUserAgent;
+
+	// Hedging, off unless set.  TimeGates and TimeMaps are timed apart, as
+	// a TimeMap page can take far longer than a redirect.
+	private LatencyTracker mTimeGateLatency;
+	private LatencyTracker mTimeMapLatency;
+	private double mHedgePercentile;
+	private HedgingBudget mHedgingBudget;
+
+	private static final int BUFFER_SIZE = 8192;
+
+	// For the TimeGate, whose answer is in the headers
+	private static final Supplier<HttpAsyncResponseConsumer<HttpResponse>> RESPONSE_CONSUMERS = 
+			new Supplier<HttpAsyncResponseConsumer<HttpResponse>>() {
+		public HttpAsyncResponseConsumer<HttpResponse> get() {
+			return HttpAsyncMethods.createConsumer();
+		}
+	};
+
+	// For TimeMap pages
+	private static final Supplier<HttpAsyncResponseConsumer<TimeMapPage>> PAGE_CONSUMERS = 
+			new Supplier<HttpAsyncResponseConsumer<TimeMapPage>>() {
+		public HttpAsyncResponseConsumer<TimeMapPage> get() {
+			return new TimeMapPageConsumer();
+		}
+	};
+
+	// Sends hedged requests, for all clients
+	private static final ScheduledExecutorService mHedgeTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "memento-hedge-timer");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	public AsyncMementoClient(String timegate, HttpAsyncClient httpClient) {
+		this(timegate, httpClient, ForkJoinPool.commonPool());
+	}
+
+	public AsyncMementoClient(String timegate, HttpAsyncClient httpClient, Executor parseExecutor) {
+		mTimegateUri = timegate;
+		mHttpClient = httpClient;
+		mParseExecutor = parseExecutor;
+	}
+
+	public String getTimegateUri() {
+		return mTimegateUri;
+	}
+
+	public void setUserAgent(String userAgent) {
+		mUserAgent = userAgent;
+	}
+
+	/**
+	 * Hedge requests to cut the tail latency: if a request has not been 
+	 * answered in the given percentile of this archive's recent response 
+	 * times, send it again, and use whichever answer comes first.  The 
+	 * requests are all GETs, so sending one twice does no harm.
+	 * @param timeGateLatency the archive's TimeGate response times, which 
+	 * every TimeGate request adds to.  Should be shared by all the clients 
+	 * for the archive.
+	 * @param timeMapLatency the same for TimeMap pages.
+	 * @param percentile e.g. 95.
+	 * @param budget limits the extra requests.  May be shared between 
+	 * archives.
+	 */
+	public void setHedging(LatencyTracker timeGateLatency, LatencyTracker timeMapLatency, 
+			double percentile, HedgingBudget budget) {
+		mTimeGateLatency = timeGateLatency;
+		mTimeMapLatency = timeMapLatency;
+		mHedgePercentile = percentile;
+		mHedgingBudget = budget;
+	}
+
+	/**
+	 * @param url
+	 * @return the mementos of the URL, in date order.  Empty if the 
+	 * TimeGate has none, and completed exceptionally if a request fails or
+	 * gets an unexpected response.  Cancelling it aborts the request in 
+	 * progress, and no more are sent.
+	 */
+	public CompletableFuture<MementoList> lookup(String url) {
+		// Just in case an archive URL was being viewed
+		final String target = Utilities.getUrlFromArchiveUrl(url);
+		HttpGet httpget = newRequest(mTimegateUri + target);
+		httpget.setHeader("Accept-Datetime", new SimpleDateTime().longDateFormatted());
+		final Lookup lookup = new Lookup();
+		final CompletableFuture<MementoList> mementos = lookup.start(execute(httpget, RESPONSE_CONSUMERS, mTimeGateLatency))
+				.thenComposeAsync(new Function<HttpResponse, CompletionStage<MementoList>>() {
+			public CompletionStage<MementoList> apply(HttpResponse response) {
+				return lookup.onTimeGateResponse(target, response);
+			}
+		}, mParseExecutor);
+		mementos.whenComplete(new BiConsumer<MementoList, Throwable>() {
+			public void accept(MementoList result, Throwable ex) {
+				if (mementos.isCancelled())
+					lookup.cancel();
+			}
+		});
+		return mementos;
+	}
+
+	private HttpGet newRequest(String url) {
+		HttpGet httpget = new HttpGet(url);
+		if (mUserAgent != null)
+			httpget.setHeader("User-Agent", mUserAgent);
+		log.debug("Accessing: " + httpget.getURI());
+		return httpget;
+	}
+
+	/**
+	 * @param httpget
+	 * @param consumers make a consumer for each request sent, as a hedged
+	 * request needs its own.
+	 * @param latency the response times of this kind of request, or null
+	 * if requests are not hedged.
+	 * @return the first answer.  Cancelling it aborts the requests.
+	 */
+	private <T> CompletableFuture<T> execute(final HttpGet httpget, final Supplier<HttpAsyncResponseConsumer<T>> consumers,
+			final LatencyTracker latency) {
+		final CompletableFuture<T> future = new CompletableFuture<T>();
+		// How many requests may yet complete the future: 1, or 2 once 
+		// hedged, and 0 as soon as one has answered
+		final AtomicInteger pending = new AtomicInteger(1);
+		final Future<T> request = send(httpget, consumers.get(), future, pending, latency);
+		future.whenComplete(new BiConsumer<T, Throwable>() {
+			public void accept(T result, Throwable ex) {
+				// Does nothing if the request has finished
+				request.cancel(true);
+			}
+		});
+		if (latency == null)
+			return future;
+		
+		mHedgingBudget.onRequest();
+		long delay = latency.getPercentile(mHedgePercentile);
+		// No timer unless there are enough response times to go on and 
+		// budget to spend
+		if (delay < 0 || !mHedgingBudget.canHedge())
+			return future;
+		mHedgeTimer.schedule(new Runnable() {
+			public void run() {
+				if (!mHedgingBudget.tryHedge())
+					return;
+				// Only if the request is still the one pending
+				if (!pending.compareAndSet(1, 2)) {
+					mHedgingBudget.refund();
+					return;
+				}
+				log.debug("Hedging request for " + httpget.getURI());
+				HttpGet copy = new HttpGet(httpget.getURI());
+				copy.setHeaders(httpget.getAllHeaders());
+				final Future<T> hedge = send(copy, consumers.get(), future, pending, latency);
+				// Whichever answers first, stop the other
+				future.whenComplete(new BiConsumer<T, Throwable>() {
+					public void accept(T result, Throwable ex) {
+						hedge.cancel(true);
+					}
+				});
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+		return future;
+	}
+
+	/**
+	 * Send the request, to complete the future unless it has been already.
+	 * A failure only completes it if no other request for it is pending.
+	 */
+	private <T> Future<T> send(final HttpGet httpget, HttpAsyncResponseConsumer<T> consumer, 
+			final CompletableFuture<T> future, final AtomicInteger pending, final LatencyTracker latency) {
+		final long start = System.currentTimeMillis();
+		return mHttpClient.execute(HttpAsyncMethods.create(httpget), consumer, new FutureCallback<T>() {
+			public void completed(T result) {
+				log.debug("Response received for " + httpget.getURI());
+				record();
+				pending.set(0);
+				future.complete(result);
+			}
+
+			public void failed(Exception ex) {
+				record();
+				if (pending.decrementAndGet() == 0)
+					future.completeExceptionally(ex);
+				else
+					log.debug("Failed, but waiting for hedged request: " + ex + " for " + httpget.getURI());
+			}
+
+			public void cancelled() {
+				// Only cancelled once the future is done: the loser of a 
+				// hedge, or any request when the lookup is cancelled
+				record();
+				future.cancel(false);
+			}
+
+			/**
+			 * Time failed and cancelled requests too, or the slowest would 
+			 * be left out and the percentiles would look better than they 
+			 * are.  A cancelled request would have taken at least this long.
+			 */
+			private void record() {
+				if (latency != null)
+					latency.record(System.currentTimeMillis() - start);
+			}
+		});
+	}
+
+	/**
+	 * The state of one lookup: the mementos so far, and the TimeMap pages
+	 * that have been found but not yet downloaded.
+	 */
+	private class Lookup implements MementoSink {
+
+		private final MementoList mMementos = new MementoList();
+		private final Set<String> mTimeMapUrls = new HashSet<String>();
+		private final Deque<String> mTimeMapsToDownload = new ArrayDeque<String>();
+		// The request in progress, to abort if the lookup is cancelled
+		private volatile CompletableFuture<?> mCurrent;
+		private volatile boolean mCancelled;
+
+		<T> CompletableFuture<T> start(CompletableFuture<T> request) {
+			mCurrent = request;
+			// In case the lookup was cancelled as the request was sent
+			if (mCancelled)
+				request.cancel(false);
+			return request;
+		}
+
+		void cancel() {
+			mCancelled = true;
+			CompletableFuture<?> current = mCurrent;
+			if (current != null)
+				current.cancel(false);
+		}
+
+		CompletionStage<MementoList> onTimeGateResponse(String url, HttpResponse response) {
+			EntityUtils.consumeQuietly(response.getEntity());
+			int statusCode = response.getStatusLine().getStatusCode();
+			// 302 is a memento, and 406 means the datetime was out of range,
+			// but either way the Link header leads to the TimeMaps
+			if (statusCode == 302 || statusCode == 406) {
+				Header link = response.getFirstHeader("Link");
+				if (link != null) {
+					new LinkParser(link.getValue()).parse(this);
+					return nextTimeMap();
+				}
+				log.error("Error: Link header not found in response headers for " + url);
+			}
+			else if (statusCode == 404) {
+				log.debug("Received 404 from TimeGate so no mementos for " + url);
+				return CompletableFuture.completedFuture(mMementos);
+			}
+			return failed(new HttpStatusException(statusCode, "Unexpected response code " + statusCode + " from " + mTimegateUri + " for " + url));
+		}
+
+		private CompletionStage<MementoList> nextTimeMap() {
+			if (mCancelled)
+				return failed(new CancellationException("Lookup cancelled"));
+			final String url = mTimeMapsToDownload.poll();
+			if (url == null) {
+				mMementos.ensureSorted();
+				return CompletableFuture.completedFuture(mMementos);
+			}
+			return start(execute(newRequest(url), PAGE_CONSUMERS, mTimeMapLatency)).thenComposeAsync(new Function<TimeMapPage, CompletionStage<MementoList>>() {
+				public CompletionStage<MementoList> apply(TimeMapPage page) {
+					return onTimeMapPage(url, page);
+				}
+			}, mParseExecutor);
+		}
+
+		private CompletionStage<MementoList> onTimeMapPage(String url, TimeMapPage page) {
+			int statusCode = page.mStatusCode;
+			if (statusCode == 404) {
+				log.debug("404 response means no mementos in " + url);
+				return nextTimeMap();
+			}
+			if (statusCode != 200 || !page.mParsed)
+				return failed(new HttpStatusException(statusCode, "Unexpected response code " + statusCode + " for TimeMap " + url));
+			for (Memento memento : page.mMementos)
+				mMementos.add(memento);
+			for (TimeMap timeMap : page.mTimeMaps)
+				onTimeMap(timeMap);
+			return nextTimeMap();
+		}
+
+		private CompletionStage<MementoList> failed(Exception ex) {
+			CompletableFuture<MementoList> future = new CompletableFuture<MementoList>();
+			future.completeExceptionally(ex);
+			return future;
+		}
+
+		public void onMemento(Memento memento) {
+			// Mementos in the TimeGate's Link header are also in the TimeMap
+		}
+
+		public void onTimeMap(TimeMap timeMap) {
+			// Only link-format is parsed, and a page may link back to 
+			// pages already seen
+			if ("application/link-format".equalsIgnoreCase(timeMap.getType())
+					&& mTimeMapUrls.add(timeMap.getUrl()))
+				mTimeMapsToDownload.add(timeMap.getUrl());
+		}
+
+		public void onTimeBundle(TimeBundle timeBundle) {
+		}
+
+		public void onOriginal(String url) {
+		}
+	}
+
+	/**
+	 * What was found on one TimeMap page.
+	 */
+	private static class TimeMapPage implements MementoSink {
+		int mStatusCode;
+		boolean mParsed;
+		final MementoList mMementos = new MementoList();
+		final List<TimeMap> mTimeMaps = new ArrayList<TimeMap>();
+
+		public void onMemento(Memento memento) {
+			mMementos.add(memento);
+		}
+
+		public void onTimeMap(TimeMap timeMap) {
+			mTimeMaps.add(timeMap);
+		}
+
+		public void onTimeBundle(TimeBundle timeBundle) {
+		}
+
+		public void onOriginal(String url) {
+		}
+	}
+
+	/**
+	 * Parses a TimeMap page as its content arrives, on the I/O thread, so 
+	 * that only the link being parsed is held rather than the whole page.
+	 * The content of anything but a 200 response is discarded.
+	 */
+	private static class TimeMapPageConsumer extends AbstractAsyncResponseConsumer<TimeMapPage> {
+
+		private final TimeMapPage mPage = new TimeMapPage();
+		private ByteBuffer mBytes;
+		private CharBuffer mChars;
+		private CharsetDecoder mDecoder;
+		private LinkParser mParser;
+
+		@Override
+		protected void onResponseReceived(HttpResponse response) {
+			mPage.mStatusCode = response.getStatusLine().getStatusCode();
+		}
+
+		@Override
+		protected void onEntityEnclosed(HttpEntity entity, ContentType contentType) {
+			mBytes = ByteBuffer.allocate(BUFFER_SIZE);
+			if (mPage.mStatusCode != 200)
+				return;
+			mChars = CharBuffer.allocate(BUFFER_SIZE);
+			mDecoder = MementoClient.getCharset(entity).newDecoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			mParser = new LinkParser(mPage);
+		}
+
+		@Override
+		protected void onContentReceived(ContentDecoder decoder, IOControl ioctrl) throws IOException {
+			while (decoder.read(mBytes) > 0) {
+				// Without a parser the content is thrown away, or the 
+				// buffer would fill and the exchange never finish
+				if (mParser == null) {
+					mBytes.clear();
+					continue;
+				}
+				mBytes.flip();
+				decode(false);
+				mBytes.compact();
+			}
+		}
+
+		/**
+		 * Decode the bytes read so far and feed them to the parser, keeping
+		 * any bytes of a character that has not all arrived.
+		 */
+		private void decode(boolean endOfInput) {
+			while (true) {
+				CoderResult result = mDecoder.decode(mBytes, mChars, endOfInput);
+				feed();
+				if (result.isUnderflow())
+					break;
+			}
+		}
+
+		private void feed() {
+			mChars.flip();
+			mParser.feed(mChars.array(), mChars.arrayOffset() + mChars.position(), mChars.remaining());
+			mChars.clear();
+		}
+
+		@Override
+		protected TimeMapPage buildResult(HttpContext context) {
+			if (mParser != null) {
+				mBytes.flip();
+				decode(true);
+				mDecoder.flush(mChars);
+				feed();
+				mParser.finish();
+				mPage.mParsed = true;
+			}
+			return mPage;
+		}
+
+		@Override
+		protected void releaseResources() {
+			mBytes = null;
+			mChars = null;
+			mDecoder = null;
+			mParser = null;
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package dev.memento;
+
+/*
+ * #%L
+ * mementoweb-java-client
+ * %%
+ * Copyright (C) 2012 - 2013 The British Library
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.util.Arrays;
+
+/**
+ * Counts for a run of numbered buckets, e.g. months numbered as
+ * year * 12 + month - 1.  Grows in either direction as needed.
+ */
+final class BucketCounts {
+
+	private int mFirst;
+	private int[] mCounts = new int[0];
+
+	void increment(int bucket) {
+		add(bucket, 1);
+	}
+
+	void decrement(int bucket) {
+		add(bucket, -1);
+	}
+
+	private void add(int bucket, int delta) {
+		if (mCounts.length == 0) {
+			mFirst = bucket;
+			mCounts = new int[16];
+		}
+		else if (bucket < mFirst) {
+			// Leave room to grow further back as well
+			int shift = Math.max(mFirst - bucket, mCounts.length / 2);
+			int[] counts = new int[mCounts.length + shift];
+			System.arraycopy(mCounts, 0, counts, shift, mCounts.length);
+			mCounts = counts;
+			mFirst -= shift;
+		}
+		else if (bucket - mFirst >= mCounts.length) {
+			mCounts = Arrays.copyOf(mCounts, Math.max(bucket - mFirst + 1, mCounts.length * 2));
+		}
+		mCounts[bucket - mFirst] += delta;
+	}
+
+	/**
+	 * @param bucket
+	 * @return the count for the bucket, 0 if nothing has been counted in it.
+	 */
+	int get(int bucket) {
+		int i = bucket - mFirst;
+		return i >= 0 && i < mCounts.length ? mCounts[i] : 0;
+	}
+
+	/**
+	 * @return the lowest bucket that may have a count.
+	 */
+	int first() {
+		return mFirst;
+	}
+
+	/**
+	 * @return one more than the highest bucket that may have a count.
+	 */
+	int end() {
+		return mFirst + mCounts.length;
+	}
+
+	void clear() {
+		mCounts = new int[0];
+	}
+}
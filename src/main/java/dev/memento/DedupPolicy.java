@@ -0,0 +1,84 @@
+package dev.memento;
+
+/*
+ * #%L
+ * mementoweb-java-client
+ * %%
+ * Copyright (C) 2012 - 2013 The British Library
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+/**
+ * What {@link MementoList#merge(java.util.List, DedupPolicy)} does with 
+ * mementos that have the same datetime to the second, whether they come 
+ * from different lists, e.g. different archives, or from the same one.
+ */
+public final class DedupPolicy {
+
+	/**
+	 * Keep them all, in the order of the lists they came from.
+	 */
+	public static final DedupPolicy KEEP_ALL = new DedupPolicy(false, Memento.NO_ARCHIVE);
+
+	/**
+	 * Keep only the first: the one from the list that comes first, or the
+	 * earliest in the list if they are from the same one.
+	 */
+	public static final DedupPolicy ONE_PER_SECOND = new DedupPolicy(true, Memento.NO_ARCHIVE);
+
+	private final boolean mOnePerSecond;
+	private final int mPreferredArchiveId;
+
+	private DedupPolicy(boolean onePerSecond, int preferredArchiveId) {
+		mOnePerSecond = onePerSecond;
+		mPreferredArchiveId = preferredArchiveId;
+	}
+
+	/**
+	 * Keep only one, from the given archive if it has one, otherwise the 
+	 * first as for {@link #ONE_PER_SECOND}.
+	 * @param archiveId see {@link Memento#getArchiveId()}.
+	 * @return
+	 */
+	public static DedupPolicy preferArchive(int archiveId) {
+		return new DedupPolicy(true, archiveId);
+	}
+
+	boolean isOnePerSecond() {
+		return mOnePerSecond;
+	}
+
+	/**
+	 * @param kept
+	 * @param other with the same datetime as kept, later in the same list
+	 * or from a later one.
+	 * @return true if other should be kept instead of kept.
+	 */
+	boolean prefers(Memento other, Memento kept) {
+		return mPreferredArchiveId != Memento.NO_ARCHIVE 
+				&& other.getArchiveId() == mPreferredArchiveId
+				&& kept.getArchiveId() != mPreferredArchiveId;
+	}
+
+	@Override
+	public String toString() {
+		if (!mOnePerSecond)
+			return "KEEP_ALL";
+		if (mPreferredArchiveId == Memento.NO_ARCHIVE)
+			return "ONE_PER_SECOND";
+		return "preferArchive(" + mPreferredArchiveId + ")";
+	}
+}
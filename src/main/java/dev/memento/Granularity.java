@@ -0,0 +1,78 @@
+package dev.memento;
+
+/*
+ * #%L
+ * mementoweb-java-client
+ * %%
+ * Copyright (C) 2012 - 2013 The British Library
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+/**
+ * The sizes of time bucket that {@link MementoList} counts mementos in.
+ * Buckets are numbered, in GMT, as:
+ * 
+ *   DAY    days since 1 Jan 1970
+ *   WEEK   weeks, starting on Mondays, since the week of 1 Jan 1970
+ *   MONTH  year * 12 + month - 1
+ *   YEAR   the year
+ */
+public enum Granularity {
+
+	DAY, WEEK, MONTH, YEAR;
+
+	private static final long SECONDS_PER_DAY = 24 * 60 * 60;
+
+	// 1 Jan 1970 was a Thursday
+	private static final int DAYS_AFTER_MONDAY = 3;
+
+	/**
+	 * @param epochSecond
+	 * @return the number of the bucket that the time falls in.
+	 */
+	public int bucketOf(long epochSecond) {
+		long day = SimpleDateTime.floorDiv(epochSecond, SECONDS_PER_DAY);
+		switch (this) {
+		case DAY:
+			return (int) day;
+		case WEEK:
+			return (int) SimpleDateTime.floorDiv(day + DAYS_AFTER_MONDAY, 7);
+		case MONTH:
+			int civil = SimpleDateTime.civilFromDays(day);
+			return (civil >> 9) * 12 + ((civil >> 5) & 15) - 1;
+		default:
+			return SimpleDateTime.civilFromDays(day) >> 9;
+		}
+	}
+
+	/**
+	 * @param bucket
+	 * @return the start of the bucket, in seconds since the epoch.
+	 */
+	public long startOf(int bucket) {
+		switch (this) {
+		case DAY:
+			return bucket * SECONDS_PER_DAY;
+		case WEEK:
+			return ((long) bucket * 7 - DAYS_AFTER_MONDAY) * SECONDS_PER_DAY;
+		case MONTH:
+			int year = (int) SimpleDateTime.floorDiv(bucket, 12);
+			return SimpleDateTime.daysFromCivil(year, bucket - year * 12 + 1, 1) * SECONDS_PER_DAY;
+		default:
+			return SimpleDateTime.daysFromCivil(bucket, 1, 1) * SECONDS_PER_DAY;
+		}
+	}
+}
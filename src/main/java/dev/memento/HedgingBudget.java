@@ -0,0 +1,78 @@
+package dev.memento;
+
+/*
+ * #%L
+ * mementoweb-java-client
+ * %%
+ * Copyright (C) 2012 - 2013 The British Library
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+/**
+ * Caps the extra requests made by hedging to a fraction of all requests.
+ * Each request earns that fraction of a hedge, up to a small reserve, and 
+ * each hedge spends one.
+ */
+public class HedgingBudget {
+
+	private final double mRatio;
+	private final double mMaxReserve;
+	private double mReserve;
+
+	/**
+	 * @param ratio the most hedges per request, e.g. 0.05 for 5% more 
+	 * requests at most.
+	 * @param maxReserve how many hedges can be saved up for a burst of slow
+	 * responses.
+	 */
+	public HedgingBudget(double ratio, double maxReserve) {
+		if (ratio < 0 || maxReserve < 1)
+			throw new IllegalArgumentException("Bad hedging budget: " + ratio + ", " + maxReserve);
+		mRatio = ratio;
+		mMaxReserve = maxReserve;
+	}
+
+	/**
+	 * Called for each request that could be hedged.
+	 */
+	public synchronized void onRequest() {
+		mReserve = Math.min(mMaxReserve, mReserve + mRatio);
+	}
+
+	/**
+	 * @return true if the budget allows a hedge now, without spending it.
+	 */
+	public synchronized boolean canHedge() {
+		return mReserve >= 1;
+	}
+
+	/**
+	 * @return true, and spend a hedge, if the budget allows one.
+	 */
+	public synchronized boolean tryHedge() {
+		if (mReserve < 1)
+			return false;
+		mReserve -= 1;
+		return true;
+	}
+
+	/**
+	 * Give back a hedge from {@link #tryHedge()} that was not sent after all.
+	 */
+	public synchronized void refund() {
+		mReserve = Math.min(mMaxReserve, mReserve + 1);
+	}
+}
@@ -0,0 +1,83 @@
+package dev.memento;
+
+/*
+ * #%L
+ * mementoweb-java-client
+ * %%
+ * Copyright (C) 2012 - 2013 The British Library
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.util.Arrays;
+
+/**
+ * Keeps the most recent response times from one archive, to give their
+ * percentiles, e.g. for deciding when to hedge a request.
+ */
+public class LatencyTracker {
+
+	private static final int DEFAULT_SAMPLES = 256;
+
+	// Fewer samples than this say little about the tail
+	private static final int MIN_SAMPLES = 20;
+
+	private final long[] mSamples;
+	private int mCount;
+	private int mNext;
+
+	public LatencyTracker() {
+		this(DEFAULT_SAMPLES);
+	}
+
+	/**
+	 * @param samples how many of the most recent response times to keep.
+	 */
+	public LatencyTracker(int samples) {
+		mSamples = new long[samples];
+	}
+
+	/**
+	 * @param millis the time a request took.
+	 */
+	public synchronized void record(long millis) {
+		mSamples[mNext] = millis;
+		mNext = (mNext + 1) % mSamples.length;
+		if (mCount < mSamples.length)
+			mCount++;
+	}
+
+	/**
+	 * @param percentile from 0 to 100, e.g. 95.
+	 * @return the response time in milliseconds that the given percentage of
+	 * recent requests took no longer than, or -1 if there have not been 
+	 * enough requests to tell.
+	 */
+	public long getPercentile(double percentile) {
+		long[] samples;
+		synchronized (this) {
+			if (mCount < MIN_SAMPLES)
+				return -1;
+			samples = Arrays.copyOf(mSamples, mCount);
+		}
+		Arrays.sort(samples);
+		int rank = (int) Math.ceil(percentile / 100 * samples.length) - 1;
+		return samples[Math.max(0, Math.min(rank, samples.length - 1))];
+	}
+
+	public synchronized int getCount() {
+		return mCount;
+	}
+}
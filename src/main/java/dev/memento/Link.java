@@ -25,13 +25,18 @@ import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
 public class Link {
-	Logger log = LogManager.getLogger(Link.class.getCanonicalName());
+	static Logger log = LogManager.getLogger(Link.class.getCanonicalName());
 	
 	private String mUrl;
-	private String mRel;
+	private int mRels;
 	private String mType;
 	private SimpleDateTime mDatetime;
 	
+	/*
+	 * Used by LinkParser, which fills in the fields as it goes.
+	 */
+	Link() {
+	}
 		
 	/*
 	 *  Parse the text provided which comes from the http response
@@ -43,115 +48,11 @@ public class Link {
 	 *  <http://web.archive.org/web/20010910203350/www.harding.edu/fmccown/>;rel="memento";datetime="Mon, 10 Sep 2001 20:33:50 GMT",
 	 *  <http://webcache.googleusercontent.com/search?q=cache:http://www.digitalpreservation.gov/>;rel="first-memento last-memento memento";datetime="Tue, 07 Sep 2010 11:54:29 GMT"
 	 *  
+	 *  Only the first link in the text is used.
 	 */	
 	public Link(String link) {
-				
-		// Grab URL
-		int index = link.indexOf(">;");
-		if (index == -1) {
-			log.error("Unable to find >; in [" + link + "]");
-			return;
-		}
-		else
-			mUrl = link.substring(1, index);
-					
-		// Remove URL part so we can grab the remaining parts
-		link = link.substring(index + 2);
-		
-		String[] parts = link.split("\\s*;\\s*");
-		if (parts.length == 0) {
+		if (!new LinkParser(link).parseInto(this))
 			log.error("Unexpected format: [" + link + "]");
-			return;
-		}
-				
-		for (String part : parts) {
-			part = part.trim();
-			
-			// Get rid of potential spaces before and after equal sign
-			part = part.replaceFirst("^(\\w+)\\s*=\\s*", "$1=");
-			
-			if (part.startsWith("rel="))
-				parseRel(part);
-			else if (part.startsWith("datetime="))
-				parseDatetime(part);
-			else if (part.startsWith("type="))
-				parseType(part);
-			else if (part.startsWith("from="))
-				parseFromDate(part);
-			else if (part.startsWith("until="))
-				parseUntilDate(part);
-			else {
-				log.error("Unexpected value: [" + part + "] when looking for rel, datetime, or type");
-				return;
-			}
-		}
-		
-		// Make sure all parts were present
-		
-		if (mRel == null) {
-			log.error("Missing rel for memento in: [" + link + "]");		
-		}
-		else if (mRel.contains("memento")) {									
-			if (mDatetime == null)
-				log.error("Missing datetime for memento in: [" + link + "]");		
-		}
-		else if (mRel.equals("timemap")) {
-			if (mType == null)
-				log.error("Missing type for timemap in: [" + link + "]");		
-		}
-	}
-	
-	private void parseFromDate(String date) {
-		// TODO: Parse "from" date for TimeMap
-	}
-	
-	private void parseUntilDate(String date) {
-		// TODO: Parse "until" date for TimeMap
-	}
-	
-	private void parseRel(String rel) {
-				
-		// Get rid of rel= at the beginning and quotes
-		rel = rel.replace("rel=\"", "");
-		rel = rel.replaceAll("\",?$", "");
-		
-		if (rel.contains("timebundle")) 
-			mRel = "timebundle";
-		else if (rel.contains("timemap")) 
-			mRel = "timemap";
-		else if (rel.contains("timegate")) 
-			mRel = "timegate";
-		else if (rel.contains("original"))
-			mRel = "original";
-		else if (rel.contains("self"))   // Used only on timemaps 
-			mRel = "self";     
-		else if (rel.contains("memento")) {		
-			// Could contain "first memento", "last memento", "prev memento", "next memento", 
-			// or "memento" or any combination of these like "first last memento"
-			mRel = rel;
-		}
-		else {
-			log.error("Undefined rel: [" + rel + "]");
-			return;
-		}    
-	}
-	
-	private void parseDatetime(String datetime) {
-		
-		// Remove initial part and quotes
-		datetime = datetime.replaceAll("datetime=\"", "");
-		datetime = datetime.replaceAll("\",?$", "");
-		
-		mDatetime = new SimpleDateTime(datetime);		
-	}
-	
-	private void parseType(String type) {
-		
-		// Remove initial part and quotes (and possible comma at end)
-		type = type.replaceAll("type=\"", "");
-		type = type.replaceAll("\",?$", "");
-		
-		mType = type;
 	}
 
 	public String getUrl() {
@@ -162,19 +63,34 @@ public class Link {
 		this.mUrl = url;
 	}
 
+	/**
+	 * @return the primary rel, see {@link Rel#toString(int)}.
+	 */
 	public String getRel() {
-		return mRel;
+		return Rel.toString(mRels);
 	}
 	
 	public String[] getRelArray() {
-		if (mRel == null)
+		String rel = getRel();
+		if (rel == null)
 			return null;
 		else
-			return mRel.split("\\s+");
+			return rel.split(" ");
 	}
 
 	public void setRel(String rel) {
-		this.mRel = rel;
+		this.mRels = Rel.parse(rel);
+	}
+
+	/**
+	 * @return the {@link Rel} bits.
+	 */
+	public int getRels() {
+		return mRels;
+	}
+
+	public void setRels(int rels) {
+		this.mRels = rels;
 	}
 
 	public String getType() {
@@ -195,7 +111,7 @@ public class Link {
 	
 	@Override
 	public String toString() {
-		return "Link [mUrl=" + mUrl + ", mRel=" + mRel + ", mType=" + mType
+		return "Link [mUrl=" + mUrl + ", mRel=" + getRel() + ", mType=" + mType
 				+ ", mDatetime=" + mDatetime + "]";
 	}
 }
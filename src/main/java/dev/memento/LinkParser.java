@@ -0,0 +1,351 @@
+package dev.memento;
+
+/*
+ * #%L
+ * mementoweb-java-client
+ * %%
+ * Copyright (C) 2012 - 2013 The British Library
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Single-pass tokenizer for the RFC 5988/RFC 6690 link-format used in
+ * Link: headers and TimeMaps.  Walks the characters once, without regular
+ * expressions, and only creates Strings for the values that end up in the
+ * resulting {@link Link}.
+ * 
+ * When reading from a Reader, only the link currently being parsed is kept
+ * in memory, so large TimeMaps can be parsed as they are downloaded.
+ *
+ * Example input:
+ *
+ *   <http://www.harding.edu/fmccown/>;rel="original",
+ *   <http://web.archive.org/web/20010724154504/www.harding.edu/fmccown/>;rel="first memento";datetime="Tue, 24 Jul 2001 15:45:04 GMT",
+ *
+ * Usage:
+ *
+ *   LinkParser parser = new LinkParser(links);
+ *   Link link;
+ *   while ((link = parser.next()) != null) { ... }
+ *
+ * or, to be handed Mementos, TimeMaps and so on as they are found:
+ *
+ *   new LinkParser(links).parse(sink);
+ *
+ * Input that arrives a piece at a time, e.g. from a non-blocking HTTP
+ * client, can be fed in as it comes, with each link passed to the sink as
+ * soon as it is complete:
+ *
+ *   LinkParser parser = new LinkParser(sink);
+ *   parser.feed(chars, 0, length);  // as often as need be
+ *   parser.finish();
+ */
+public class LinkParser extends LinkScanner {
+	static Logger log = LogManager.getLogger(LinkParser.class.getCanonicalName());
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private char[] mBuf;
+
+	private Reader mReader;
+	private IOException mIOException;
+
+	// Where fed links go, and whether the end of the input has been fed
+	private MementoSink mSink;
+	private boolean mFinished;
+
+	// The link being parsed
+	private Link mLink;
+
+	public LinkParser(String links) {
+		this(links.toCharArray(), 0, links.length());
+	}
+
+	/**
+	 * Parse the links held in buf[offset] to buf[offset + length - 1].
+	 * The array is not copied.
+	 * @param buf
+	 * @param offset
+	 * @param length
+	 */
+	public LinkParser(char[] buf, int offset, int length) {
+		mBuf = buf;
+		mPos = offset;
+		mEnd = offset + length;
+		mMark = offset;
+	}
+
+	/**
+	 * Parse the links read from the given Reader, a buffer at a time.
+	 * The Reader is not closed.  If it fails, parsing stops as if the input
+	 * had ended and the exception is available from {@link #ioException()}.
+	 * @param reader
+	 */
+	public LinkParser(Reader reader) {
+		mBuf = new char[BUFFER_SIZE];
+		mReader = reader;
+	}
+
+	/**
+	 * Parse the links fed to {@link #feed(char[], int, int)}, passing each 
+	 * one to the sink, as {@link #parse(MementoSink)} does, once it is 
+	 * complete.
+	 * @param sink
+	 */
+	public LinkParser(MementoSink sink) {
+		mBuf = new char[BUFFER_SIZE];
+		mSink = sink;
+	}
+
+	/**
+	 * Add more input, and parse the links that it completes.  Only the link
+	 * that is not yet complete is kept.  The chars are copied.
+	 * @param chars
+	 * @param offset
+	 * @param length
+	 */
+	public void feed(char[] chars, int offset, int length) {
+		if (mSink == null || mFinished)
+			throw new IllegalStateException("Not expecting input");
+		compact();
+		if (mBuf.length - mEnd < length)
+			mBuf = Arrays.copyOf(mBuf, Math.max(mEnd + length, mBuf.length * 2));
+		System.arraycopy(chars, offset, mBuf, mEnd, length);
+		mEnd += length;
+		parseFed();
+	}
+
+	/**
+	 * Mark the end of the input, and parse the last link.
+	 */
+	public void finish() {
+		if (mSink == null)
+			throw new IllegalStateException("Not expecting input");
+		mFinished = true;
+		parseFed();
+	}
+
+	private void parseFed() {
+		try {
+			parse(mSink);
+		}
+		catch (NeedInput e) {
+			// Start the link again when there is more of it
+			mPos = mMark;
+		}
+	}
+
+	/**
+	 * Return the next Link in the input or null when the input is exhausted.
+	 * Malformed entries are logged and skipped.
+	 * @return
+	 */
+	public Link next() {
+		while (skipSeparators()) {
+			Link link = new Link();
+			if (parseLink(link))
+				return link;
+		}
+		return null;
+	}
+
+	/**
+	 * Parse all the remaining links, passing each one to the sink according
+	 * to its rel.  Links with other rels, and mementos without a datetime, 
+	 * are skipped.
+	 * @param sink
+	 * @return the number of links parsed.
+	 */
+	public int parse(MementoSink sink) {
+		int links = 0;
+		Link link;
+		while ((link = next()) != null) {
+			links++;
+			switch (Rel.primary(link.getRels())) {
+			case Rel.MEMENTO:
+				if (link.getDatetime() != null)
+					sink.onMemento(new Memento(link));
+				break;
+			case Rel.TIMEMAP:
+				sink.onTimeMap(new TimeMap(link));
+				break;
+			case Rel.TIMEBUNDLE:
+				sink.onTimeBundle(new TimeBundle(link));
+				break;
+			case Rel.ORIGINAL:
+				sink.onOriginal(link.getUrl());
+				break;
+			}
+		}
+		return links;
+	}
+
+	/**
+	 * Parse a single link into the given Link.
+	 * @param link
+	 * @return false if no well-formed link could be found.
+	 */
+	boolean parseInto(Link link) {
+		return skipSeparators() && parseLink(link);
+	}
+
+	/**
+	 * @return the IOException that stopped reading, or null if there was none.
+	 */
+	public IOException ioException() {
+		return mIOException;
+	}
+
+	/**
+	 * @return true if there is at least one more character to read, refilling
+	 * the buffer from the Reader if need be.
+	 */
+	@Override
+	boolean more() {
+		if (mPos < mEnd || fill())
+			return true;
+		// Until finish() is called, the input may not have ended
+		if (mSink != null && !mFinished)
+			throw NeedInput.INSTANCE;
+		return false;
+	}
+
+	/**
+	 * Keep the link being parsed and drop everything before it.
+	 */
+	private void compact() {
+		if (mMark > 0) {
+			System.arraycopy(mBuf, mMark, mBuf, 0, mEnd - mMark);
+			mPos -= mMark;
+			mEnd -= mMark;
+			mMark = 0;
+		}
+	}
+
+	private boolean fill() {
+		if (mReader == null)
+			return false;
+
+		compact();
+		if (mEnd == mBuf.length)
+			mBuf = Arrays.copyOf(mBuf, mBuf.length * 2);
+
+		try {
+			int read = mReader.read(mBuf, mEnd, mBuf.length - mEnd);
+			if (read > 0) {
+				mEnd += read;
+				return true;
+			}
+		} catch (IOException e) {
+			mIOException = e;
+		}
+		mReader = null;
+		return false;
+	}
+
+	private boolean parseLink(Link link) {
+		mLink = link;
+		try {
+			if (!scanLink())
+				return false;
+		} finally {
+			mLink = null;
+		}
+		validate(link);
+		return true;
+	}
+
+	@Override
+	int charAt(int pos) {
+		return mBuf[pos];
+	}
+
+	@Override
+	String decode(int start, int end) {
+		return new String(mBuf, start, end - start);
+	}
+
+	@Override
+	void onUrl(int start, int end) {
+		mLink.setUrl(decode(start, end));
+	}
+
+	@Override
+	void onParameter(int nameStart, int nameEnd, int valueStart, int valueEnd) {
+		Link link = mLink;
+		if (equalsIgnoreCase(nameStart, nameEnd, "rel"))
+			link.setRels(parseRel(valueStart, valueEnd));
+		else if (equalsIgnoreCase(nameStart, nameEnd, "datetime")) {
+			try {
+				link.setDatetime(new SimpleDateTime(mBuf, valueStart, valueEnd - valueStart));
+			} catch (IllegalArgumentException e) {
+				log.error(e.getMessage());
+			}
+		}
+		else if (equalsIgnoreCase(nameStart, nameEnd, "type"))
+			link.setType(new String(mBuf, valueStart, valueEnd - valueStart));
+		else {
+			log.debug("Ignoring unexpected parameter [" +
+					new String(mBuf, nameStart, nameEnd - nameStart) + "]");
+		}
+	}
+
+	private int parseRel(int start, int end) {
+		// Could contain "first memento", "last memento", "prev memento", "next memento",
+		// or "memento" or any combination of these like "first last memento"
+		int rels = Rel.parse(mBuf, start, end);
+		if (Rel.primary(rels) == 0)
+			log.error("Undefined rel: [" + new String(mBuf, start, end - start) + "]");
+		return rels;
+	}
+
+	private void validate(Link link) {
+		switch (Rel.primary(link.getRels())) {
+		case 0:
+			log.error("Missing rel for memento in: [" + excerpt() + "]");
+			break;
+		case Rel.MEMENTO:
+			if (link.getDatetime() == null)
+				log.error("Missing datetime for memento in: [" + excerpt() + "]");
+			break;
+		case Rel.TIMEMAP:
+			if (link.getType() == null)
+				log.error("Missing type for timemap in: [" + excerpt() + "]");
+			break;
+		}
+	}
+
+	/**
+	 * Thrown when fed input runs out part way through a link, to stop 
+	 * parsing until there is more.
+	 */
+	private static final class NeedInput extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		static final NeedInput INSTANCE = new NeedInput();
+
+		private NeedInput() {
+			super(null, null, false, false);
+		}
+	}
+}
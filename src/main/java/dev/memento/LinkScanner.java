@@ -0,0 +1,228 @@
+package dev.memento;
+
+/*
+ * #%L
+ * mementoweb-java-client
+ * %%
+ * Copyright (C) 2012 - 2013 The British Library
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The scanning of link-format shared by {@link LinkParser}, which reads
+ * chars, and {@link TimeMapIndex}, which reads bytes.  Finds the URL and the
+ * name and value of each parameter of a link, skipping quoted strings and 
+ * malformed entries, and hands their positions to the subclass to make of 
+ * them what it will.
+ */
+abstract class LinkScanner {
+	static Logger log = LogManager.getLogger(LinkScanner.class.getCanonicalName());
+
+	// The next character to read and the end of those available
+	int mPos;
+	int mEnd;
+
+	// Start of the link being scanned.  Subclasses that refill a buffer 
+	// may discard everything before it, so positions within the link are 
+	// held relative to this.
+	int mMark;
+
+	/**
+	 * @return true if there is at least one more character to read.  May 
+	 * move the characters from mMark on, changing mPos, mEnd and mMark.
+	 */
+	abstract boolean more();
+
+	/**
+	 * @param pos
+	 * @return the character at pos, as an unsigned value.
+	 */
+	abstract int charAt(int pos);
+
+	abstract String decode(int start, int end);
+
+	/**
+	 * Called with the position of the URL of the link being scanned, which
+	 * stays valid until {@link #more()} is next called.
+	 */
+	abstract void onUrl(int start, int end);
+
+	/**
+	 * Called with the position of each parameter of the link being scanned, 
+	 * which stays valid until {@link #more()} is next called.  The value 
+	 * of a quoted parameter is given without its quotes.
+	 */
+	abstract void onParameter(int nameStart, int nameEnd, int valueStart, int valueEnd);
+
+	/**
+	 * Skip white space and commas between links.
+	 * @return true if there is anything left to scan.
+	 */
+	final boolean skipSeparators() {
+		mMark = mPos;
+		while (more() && (charAt(mPos) == ',' || isWhitespace(charAt(mPos))))
+			mMark = ++mPos;
+		return more();
+	}
+
+	/**
+	 * Scan the link at the current position, up to and including the comma
+	 * that ends it.  An entry that does not start with a URL is skipped.
+	 * @return false if no URL was found.
+	 */
+	final boolean scanLink() {
+		if (charAt(mPos) != '<') {
+			skipEntry("Unable to find <");
+			return false;
+		}
+		mPos++;
+		int urlStart = mPos - mMark;
+		while (more() && charAt(mPos) != '>')
+			mPos++;
+		if (!more()) {
+			log.error("Unable to find > in [" + excerpt() + "]");
+			return false;
+		}
+		onUrl(mMark + urlStart, mPos);
+		mPos++;
+
+		// Then the ;-separated parameters, up to the comma ending this link
+		while (true) {
+			skipWhitespace();
+			if (!more())
+				break;
+			int c = charAt(mPos);
+			if (c == ',') {
+				mPos++;
+				break;
+			}
+			if (c != ';') {
+				skipEntry("Unexpected character '" + (char) c + "'");
+				break;
+			}
+			mPos++;
+			skipWhitespace();
+
+			int nameStart = mPos - mMark;
+			while (more() && isTokenChar(charAt(mPos)))
+				mPos++;
+			int nameEnd = mPos - mMark;
+
+			// Value may be quoted or a bare token, with optional spaces around =
+			skipWhitespace();
+			if (!more() || charAt(mPos) != '=') {
+				log.debug("Ignoring parameter without value in [" + excerpt() + "]");
+				continue;
+			}
+			mPos++;
+			skipWhitespace();
+			int valueStart, valueEnd;
+			if (more() && charAt(mPos) == '"') {
+				mPos++;
+				valueStart = mPos - mMark;
+				while (more() && charAt(mPos) != '"') {
+					if (charAt(mPos) == '\\') {
+						mPos++;
+						if (!more())
+							break;
+					}
+					mPos++;
+				}
+				valueEnd = mPos - mMark;
+				if (more())
+					mPos++;
+			}
+			else {
+				valueStart = mPos - mMark;
+				while (more() && isTokenChar(charAt(mPos)))
+					mPos++;
+				valueEnd = mPos - mMark;
+			}
+
+			onParameter(mMark + nameStart, mMark + nameEnd, 
+					mMark + valueStart, mMark + valueEnd);
+		}
+		return true;
+	}
+
+	/**
+	 * Move past the end of the current link, i.e. the next comma that is
+	 * not inside a URL or quoted string, and then log the error.  mMark 
+	 * stays at the start of the link, as in {@link #scanLink()}, so that a
+	 * skip that runs out of input can start again from there.
+	 * @param error what is wrong with the link.
+	 */
+	private void skipEntry(String error) {
+		boolean inUrl = false, inQuotes = false;
+		while (more()) {
+			int c = charAt(mPos++);
+			if (inQuotes) {
+				// As in the values scanLink() reads, \ escapes the next char
+				if (c == '\\') {
+					if (more())
+						mPos++;
+				}
+				else if (c == '"')
+					inQuotes = false;
+			}
+			else if (inUrl) {
+				if (c == '>')
+					inUrl = false;
+			}
+			else if (c == '"')
+				inQuotes = true;
+			else if (c == '<')
+				inUrl = true;
+			else if (c == ',')
+				break;
+		}
+		log.error(error + " in [" + excerpt() + "]");
+	}
+
+	private void skipWhitespace() {
+		while (more() && isWhitespace(charAt(mPos)))
+			mPos++;
+	}
+
+	static boolean isWhitespace(int c) {
+		return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+	}
+
+	static boolean isTokenChar(int c) {
+		return c != '=' && c != ';' && c != ',' && c != '"' && !isWhitespace(c);
+	}
+
+	final boolean equalsIgnoreCase(int start, int end, String s) {
+		if (end - start != s.length())
+			return false;
+		for (int i = 0; i < s.length(); i++) {
+			if (Character.toLowerCase((char) charAt(start + i)) != s.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the start of the link being scanned, for error messages.
+	 */
+	final String excerpt() {
+		int end = Math.min(mEnd, Math.max(mPos, mMark + 200));
+		return decode(mMark, end);
+	}
+}
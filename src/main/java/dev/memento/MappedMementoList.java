@@ -0,0 +1,315 @@
+package dev.memento;
+
+/*
+ * #%L
+ * mementoweb-java-client
+ * %%
+ * Copyright (C) 2012 - 2013 The British Library
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Mementos kept in a memory-mapped file rather than on the heap, for
+ * TimeMaps with millions of entries.  The file can be opened again, by this
+ * or another process, without reading it through: only the header is
+ * checked, and each URL as it is read.  {@link #open(File, boolean)} can
+ * check every record instead, at the cost of reading them all.
+ * 
+ * The file is a header, then a fixed-width record for each memento, in 
+ * date order, then the URLs in UTF-8:
+ * 
+ *   header: magic (int), version (int), count (int), reserved (int)
+ *   record: epoch second (long), URL offset (long), URL length (int),
+ *           archive id (int), rels (int)
+ * 
+ * URL offsets are from the start of the URLs.  Like any mapped file, it is
+ * limited to 2GB, which is some twenty million mementos.
+ * 
+ * There is no way to release the mapping: it stays until the list is 
+ * garbage collected.  A file that is mapped can still be replaced by 
+ * {@link #write(MementoIndex, File)}, which writes a new file and moves it
+ * into place, so lists already open keep seeing the old one (except on 
+ * Windows, where a mapped file can't be replaced).
+ */
+public final class MappedMementoList extends AbstractMementoIndex {
+
+	private static final int MAGIC = 0x4d4d4c31; // "MML1"
+	private static final int VERSION = 1;
+
+	static final int HEADER_SIZE = 16;
+	static final int RECORD_SIZE = 28;
+
+	private static final int URL_OFFSET = 8;
+	private static final int URL_LENGTH = 16;
+	private static final int ARCHIVE_ID = 20;
+	private static final int RELS = 24;
+
+	private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final MappedByteBuffer mBuffer;
+	private final int mSize;
+	private final long mUrlsStart;
+	private final long mUrlsLength;
+
+	private MappedMementoList(MappedByteBuffer buffer, int size) {
+		mBuffer = buffer;
+		mSize = size;
+		mUrlsStart = HEADER_SIZE + (long) size * RECORD_SIZE;
+		mUrlsLength = buffer.capacity() - mUrlsStart;
+	}
+
+	/**
+	 * Map a file written by {@link #write(MementoIndex, File)}, checking
+	 * only its header, so that even a long list opens at once.
+	 * @param file
+	 * @return
+	 * @throws IOException if the file can't be read or isn't a list of 
+	 * mementos.
+	 */
+	public static MappedMementoList open(File file) throws IOException {
+		return open(file, false);
+	}
+
+	/**
+	 * Map a file written by {@link #write(MementoIndex, File)}.
+	 * @param file
+	 * @param verify if true, read every record to check it, so that a 
+	 * corrupt file is found now rather than when a URL is read.
+	 * @return
+	 * @throws IOException if the file can't be read or isn't a list of 
+	 * mementos.
+	 */
+	public static MappedMementoList open(File file, boolean verify) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			long length = channel.size();
+			if (length > Integer.MAX_VALUE)
+				throw new IOException("Too large to map: " + file);
+			if (length < HEADER_SIZE)
+				throw new IOException("Not a memento list: " + file);
+			// The mapping stays valid after the channel is closed
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+			if (buffer.getInt(0) != MAGIC)
+				throw new IOException("Not a memento list: " + file);
+			if (buffer.getInt(4) != VERSION)
+				throw new IOException("Unsupported memento list version " + buffer.getInt(4) + ": " + file);
+			int size = buffer.getInt(8);
+			if (size < 0 || HEADER_SIZE + (long) size * RECORD_SIZE > length)
+				throw new IOException("Truncated memento list: " + file);
+			MappedMementoList list = new MappedMementoList(buffer, size);
+			if (verify)
+				list.verify(file);
+			return list;
+		}
+		finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Check that the records are in date order and their URLs are within the
+	 * file.
+	 */
+	private void verify(File file) throws IOException {
+		for (int i = 0; i < mSize; i++) {
+			int record = HEADER_SIZE + i * RECORD_SIZE;
+			if (i > 0 && mBuffer.getLong(record) < mBuffer.getLong(record - RECORD_SIZE))
+				throw new IOException("Corrupt memento list, not in date order at index " + i + ": " + file);
+			if (!isUrlInRange(record))
+				throw new IOException("Corrupt memento list, URL out of range at index " + i + ": " + file);
+		}
+	}
+
+	private boolean isUrlInRange(int record) {
+		long offset = mBuffer.getLong(record + URL_OFFSET);
+		int urlLength = mBuffer.getInt(record + URL_LENGTH);
+		return offset >= 0 && urlLength >= 0 && offset + urlLength <= mUrlsLength;
+	}
+
+	/**
+	 * Write the mementos to a file and map it.  The file is written under 
+	 * another name and then moved into place, so that lists already mapped
+	 * on it are not disturbed.
+	 * @param mementos in date order, e.g. a {@link MementoList} or a 
+	 * {@link MementoSnapshot}.
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 * @throws IllegalArgumentException if the mementos are not in date order.
+	 */
+	public static MappedMementoList write(MementoIndex mementos, File file) throws IOException {
+		File temp = File.createTempFile("." + file.getName() + ".", ".tmp", file.getAbsoluteFile().getParentFile());
+		boolean written = false;
+		try {
+			writeFile(mementos, temp);
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			written = true;
+		}
+		finally {
+			if (!written)
+				temp.delete();
+		}
+		return open(file);
+	}
+
+	private static void writeFile(MementoIndex mementos, File file) throws IOException {
+		int size = mementos.size();
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			FileChannel channel = raf.getChannel();
+
+			// Records and URLs are buffered separately and written at their
+			// own positions in the file
+			byte[] records = new byte[WRITE_BUFFER_SIZE - WRITE_BUFFER_SIZE % RECORD_SIZE];
+			ByteBuffer recordBuffer = ByteBuffer.wrap(records);
+			byte[] urls = new byte[WRITE_BUFFER_SIZE];
+			int recordsUsed = 0;
+			int urlsUsed = 0;
+			long recordsPosition = HEADER_SIZE;
+			long urlsStart = HEADER_SIZE + (long) size * RECORD_SIZE;
+			long urlsPosition = urlsStart;
+			long urlOffset = 0;
+
+			for (int i = 0; i < size; i++) {
+				long epochSecond = mementos.getEpochSecond(i);
+				if (i > 0 && epochSecond < mementos.getEpochSecond(i - 1))
+					throw new IllegalArgumentException("Mementos not in date order at index " + i);
+				Memento memento = mementos.get(i);
+				String url = memento.getUrl();
+				byte[] bytes = url == null ? new byte[0] : url.getBytes(UTF8);
+
+				if (recordsUsed == records.length) {
+					writeFully(channel, ByteBuffer.wrap(records, 0, recordsUsed), recordsPosition);
+					recordsPosition += recordsUsed;
+					recordsUsed = 0;
+				}
+				recordBuffer.putLong(recordsUsed, epochSecond);
+				recordBuffer.putLong(recordsUsed + URL_OFFSET, urlOffset);
+				recordBuffer.putInt(recordsUsed + URL_LENGTH, bytes.length);
+				recordBuffer.putInt(recordsUsed + ARCHIVE_ID, memento.getArchiveId());
+				recordBuffer.putInt(recordsUsed + RELS, memento.getRels());
+				recordsUsed += RECORD_SIZE;
+
+				if (urlsUsed + bytes.length > urls.length) {
+					writeFully(channel, ByteBuffer.wrap(urls, 0, urlsUsed), urlsPosition);
+					urlsPosition += urlsUsed;
+					urlsUsed = 0;
+				}
+				if (bytes.length > urls.length) {
+					writeFully(channel, ByteBuffer.wrap(bytes), urlsPosition);
+					urlsPosition += bytes.length;
+				}
+				else {
+					System.arraycopy(bytes, 0, urls, urlsUsed, bytes.length);
+					urlsUsed += bytes.length;
+				}
+				urlOffset += bytes.length;
+			}
+			writeFully(channel, ByteBuffer.wrap(records, 0, recordsUsed), recordsPosition);
+			writeFully(channel, ByteBuffer.wrap(urls, 0, urlsUsed), urlsPosition);
+
+			// The header goes last, so a file that was not finished is not
+			// taken for a list
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(0, MAGIC);
+			header.putInt(4, VERSION);
+			header.putInt(8, size);
+			writeFully(channel, header, 0);
+			channel.force(false);
+		}
+		finally {
+			raf.close();
+		}
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining())
+			position += channel.write(buffer, position);
+	}
+
+	public int size() {
+		return mSize;
+	}
+
+	public Memento get(int index) {
+		Memento memento = new Memento();
+		memento.setDateTime(new SimpleDateTime(getEpochSecond(index)));
+		memento.setRels(getRels(index));
+		memento.setArchiveId(getArchiveId(index));
+		memento.setUrl(getUrl(index));
+		return memento;
+	}
+
+	public long getEpochSecond(int index) {
+		return mBuffer.getLong(record(index));
+	}
+
+	/**
+	 * @param index
+	 * @return the URL of the memento at the given index, without making a
+	 * Memento.
+	 * @throws IllegalStateException if the file is corrupt, and the URL is
+	 * not within it.
+	 */
+	public String getUrl(int index) {
+		int record = record(index);
+		if (!isUrlInRange(record))
+			throw new IllegalStateException("Corrupt memento list, URL out of range at index " + index);
+		long offset = mUrlsStart + mBuffer.getLong(record + URL_OFFSET);
+		byte[] bytes = new byte[mBuffer.getInt(record + URL_LENGTH)];
+		// A duplicate, so that threads don't share a position
+		ByteBuffer urls = mBuffer.duplicate();
+		urls.position((int) offset);
+		urls.get(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	/**
+	 * @param index
+	 * @return the {@link Rel} bits of the memento at the given index.
+	 */
+	public int getRels(int index) {
+		return mBuffer.getInt(record(index) + RELS);
+	}
+
+	/**
+	 * @param index
+	 * @return the archive the memento at the given index came from, see
+	 * {@link Memento#getArchiveId()}.
+	 */
+	public int getArchiveId(int index) {
+		return mBuffer.getInt(record(index) + ARCHIVE_ID);
+	}
+
+	private int record(int index) {
+		if (index < 0 || index >= mSize)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mSize);
+		return HEADER_SIZE + index * RECORD_SIZE;
+	}
+}
@@ -25,33 +25,124 @@ import java.io.Serializable;
 
 public class Memento implements Comparable<Memento>, Serializable{
 	
-	private static final long serialVersionUID = 1L;
+	private static final long serialVersionUID = 2L;
+	
+	/**
+	 * The archive id of a memento that is not known to have come from a
+	 * particular archive.
+	 */
+	public static final int NO_ARCHIVE = -1;
 	
 	private String mUrl;
-	private String mRel;
+	private int mRels;
 	private SimpleDateTime mDatetime;
 	
+	// Which archive this came from, as an index into a list of archives 
+	// kept elsewhere, e.g. by MementosAggregator
+	private short mArchiveId = NO_ARCHIVE;
+	
+	// Instead of mUrl, when the URL fits a template shared with other Mementos
+	private UrlTemplate mUrlTemplate;
+	private long mUrlTimestamp;
+	
 	
 	public Memento(Link link) {
 		mUrl = link.getUrl();
-		mRel = link.getRel();
+		mRels = link.getRels();
 		mDatetime = link.getDatetime();	
 	}
+	
+	/**
+	 * For subclasses that work out the values on demand, by overriding 
+	 * the getters.
+	 */
+	protected Memento() {
+	}
 
 	public String getUrl() {
+		if (mUrl == null && mUrlTemplate != null)
+			return mUrlTemplate.expand(mUrlTimestamp);
 		return mUrl;
 	}
 	
 	public void setUrl(String url) {
 		this.mUrl = url;
+		this.mUrlTemplate = null;
+	}
+	
+	/**
+	 * Keep the URL as a template and timestamp rather than a String.
+	 * Used by {@link MementoList}.
+	 * @param template
+	 * @param timestamp
+	 */
+	void setUrl(UrlTemplate template, long timestamp) {
+		this.mUrl = null;
+		this.mUrlTemplate = template;
+		this.mUrlTimestamp = timestamp;
 	}
 	
+	UrlTemplate getUrlTemplate() {
+		return mUrlTemplate;
+	}
+	
+	long getUrlTimestamp() {
+		return mUrlTimestamp;
+	}
+	
+	/**
+	 * @return the rel, e.g. "first memento", see {@link Rel#toString(int)}.
+	 */
 	public String getRel() {
-		return mRel;
+		return Rel.toString(getRels());
 	}
 	
 	public void setRel(String rel) {
-		this.mRel = rel;
+		this.mRels = Rel.parse(rel);
+	}
+	
+	/**
+	 * @return the {@link Rel} bits.
+	 */
+	public int getRels() {
+		return mRels;
+	}
+	
+	public void setRels(int rels) {
+		this.mRels = rels;
+	}
+	
+	public boolean isFirst() {
+		return (getRels() & Rel.FIRST) != 0;
+	}
+	
+	public boolean isLast() {
+		return (getRels() & Rel.LAST) != 0;
+	}
+	
+	public boolean isPrev() {
+		return (getRels() & Rel.PREV) != 0;
+	}
+	
+	public boolean isNext() {
+		return (getRels() & Rel.NEXT) != 0;
+	}
+	
+	/**
+	 * @return the index of the archive this memento came from, or 
+	 * {@link #NO_ARCHIVE}.
+	 */
+	public int getArchiveId() {
+		return mArchiveId;
+	}
+	
+	/**
+	 * @param archiveId from 0 to Short.MAX_VALUE, or {@link #NO_ARCHIVE}.
+	 */
+	public void setArchiveId(int archiveId) {
+		if (archiveId < NO_ARCHIVE || archiveId > Short.MAX_VALUE)
+			throw new IllegalArgumentException("Archive id out of range: " + archiveId);
+		mArchiveId = (short) archiveId;
 	}
 	
 	public SimpleDateTime getDateTime() {
@@ -59,40 +150,46 @@ public class Memento implements Comparable<Memento>, Serializable{
 	}
 	
 	public String getDateTimeString() {
-		return mDatetime.longDateFormatted();
+		return getDateTime().longDateFormatted();
 	}
 	
 	public void setDateTime(String datetime) {
 		mDatetime = new SimpleDateTime(datetime);
 	}
 	
+	public void setDateTime(SimpleDateTime datetime) {
+		mDatetime = datetime;
+	}
+	
 	public CharSequence getDateAndTimeFormatted() {		
-		return mDatetime.dateAndTimeFormatted();
+		return getDateTime().dateAndTimeFormatted();
 	}
 	
 	public String getDateTimeSimple() {
-		return mDatetime.dateFormatted().toString();
+		return getDateTime().dateFormatted().toString();
 	}
 	
 	@Override
 	public String toString() {
-		return "Memento: url=[" + mUrl + "] rel=[" + mRel + "]" + 
-			" datetime=[" + mDatetime + "]";
+		return "Memento: url=[" + getUrl() + "] rel=[" + getRel() + "]" + 
+			" datetime=[" + getDateTime() + "]";
 	}
 
 	@Override
 	public int compareTo(Memento memento) {			
-		return mDatetime.compareTo(memento.mDatetime);
+		return getDateTime().compareTo(memento.getDateTime());
 	}    	
 	
 	@Override
 	public int hashCode() {
+		SimpleDateTime datetime = getDateTime();
+		String url = getUrl();
 		final int prime = 31;
 		int result = 1;
 		result = prime * result
-				+ ((mDatetime == null) ? 0 : mDatetime.hashCode());
-		result = prime * result + ((mRel == null) ? 0 : mRel.hashCode());
-		result = prime * result + ((mUrl == null) ? 0 : mUrl.hashCode());
+				+ ((datetime == null) ? 0 : datetime.hashCode());
+		result = prime * result + getRels();
+		result = prime * result + ((url == null) ? 0 : url.hashCode());
 		return result;
 	}
 
@@ -102,23 +199,22 @@ public class Memento implements Comparable<Memento>, Serializable{
 			return true;
 		if (obj == null)
 			return false;
-		if (getClass() != obj.getClass())
+		if (!(obj instanceof Memento))
 			return false;
 		Memento other = (Memento) obj;
-		if (mDatetime == null) {
-			if (other.mDatetime != null)
+		SimpleDateTime datetime = getDateTime();
+		if (datetime == null) {
+			if (other.getDateTime() != null)
 				return false;
-		} else if (!mDatetime.equals(other.mDatetime))
+		} else if (!datetime.equals(other.getDateTime()))
 			return false;
-		if (mRel == null) {
-			if (other.mRel != null)
-				return false;
-		} else if (!mRel.equals(other.mRel))
+		if (getRels() != other.getRels())
 			return false;
-		if (mUrl == null) {
-			if (other.mUrl != null)
+		String url = getUrl();
+		if (url == null) {
+			if (other.getUrl() != null)
 				return false;
-		} else if (!mUrl.equals(other.mUrl))
+		} else if (!url.equals(other.getUrl()))
 			return false;
 		return true;
 	}
@@ -45,23 +45,29 @@ package dev.memento;
  * #L%
  */
 
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.URISyntaxException;
+import java.nio.charset.Charset;
 import java.text.DateFormat;
 import java.util.Calendar;
-import java.util.Collections;
 import java.util.HashSet;
 import java.util.Locale;
 
 import org.apache.http.Header;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.params.ClientPNames;
 import org.apache.http.conn.params.ConnRoutePNames;
+import org.apache.http.entity.ContentType;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.protocol.HTTP;
 import org.apache.http.util.EntityUtils;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
@@ -90,6 +96,9 @@ public class MementoClient {
     private Memento mFirstMemento;
     private Memento mLastMemento;
     private MementoList mMementos;
+    private MementoSink mMementoSink;
+    
+    private int mParallelParseThreshold = -1;
     
     private final int MAX_NUM_MEMENTOS_IN_LIST = 20;
     
@@ -182,9 +191,7 @@ public class MementoClient {
         
         if (mFirstMemento != null && mFirstMemento.getDateTime().equals(mDateChosen)) {
         	log.debug("Changing chosen time to 23:59 since datetime matches first Memento.");
-        	SimpleDateTime dt = new SimpleDateTime(mDateChosen);
-        	dt.setToLastHour();
-        	acceptDatetime = dt.longDateFormatted();
+        	acceptDatetime = mDateChosen.toLastHour().longDateFormatted();
         }
         else {
         	acceptDatetime = mDateChosen.longDateFormatted(); 
@@ -325,15 +332,15 @@ public class MementoClient {
     }  
      
     /**
-     * Makes sure that this link contains a timemap that has not already been seen.
-     * @param link
+     * Makes sure that this is a timemap that has not already been seen.
+     * @param timeMap
      * @return true if the timemap's URL already exists in the list of timemaps, false otherwise.
      */
-    private boolean timeMapAlreadyExists(Link link) {
+    private boolean timeMapAlreadyExists(TimeMap timeMap) {
     	for (TimeMap tm : mTimeMaps) {
-			if (tm.getUrl().equals(link.getUrl())) {
+			if (tm.getUrl().equals(timeMap.getUrl())) {
 				log.debug("Link contains a duplicate timemap URL that is being " +
-						"ignored: " + link.toString());
+						"ignored: " + timeMap.toString());
 				return true;
 			}
     	}
@@ -360,84 +367,52 @@ public class MementoClient {
      * @param links
      */
     public Memento parseCsvLinks(String links, boolean addToMementoList) {
-    	    	
-    	mFirstMemento = null;
-    	mLastMemento = null;
-    	
-    	Memento returnMemento = null;
-    	    	
-    	// Dump to file for debugging
-    	//dumpToFile(links);
-    	    	
-		String[] linkStrings = links.split("\"\\s*,");				
-		log.debug("Start parsing " + linkStrings.length + " links");
-		
-		int mementoLinks = 0;
-		
-    	// Place all Links into the array and then sort it based on date
-    	for (String linkStr : linkStrings) {
-			    		
-			// Add back "
-			if (!linkStr.endsWith("\""))
-				linkStr += "\"";
-						
-			linkStr = linkStr.trim();
-			
-			Link link = new Link(linkStr);
-			
-			String rel = link.getRel();
-			if (rel.contains("memento")) {
-				mementoLinks++;
-				Memento m = new Memento(link);
-				
-				// There may be just one memento in the links, so it should be returned
-				if (returnMemento == null)
-					returnMemento = m;
-				
-				if (addToMementoList)
-					mMementos.add(m);				
-				
-				// Peel out all values in rel which are separated by white space
-				String[] items = link.getRelArray();
-				for (String r : items) {						
-					r = r.toLowerCase();
-										
-					// First and last should be reported in 302 response
-					if (r.contains("first")) {
-						mFirstMemento = m;
-					}
-					if (r.contains("last")) {
-						mLastMemento = m;
-					}
-				}		
-			}
-			else if (rel.equals("timemap")) {
-				// See if this is really a new timemap (server could be mistaken, and
-				// we don't want to be caught in an infinite loop
-				TimeMap tm = new TimeMap(link);
-				if( "application/link-format".equalsIgnoreCase(tm.getType()) ) {
-					if (!timeMapAlreadyExists(link)) {
-						log.debug("Adding new timemap " + link.toString());
-						mTimeMaps.add(tm);
-					}
-				} else {
-					log.debug("Skipping timemap in unsupported format "+tm.getType());
-				}
-			}
-			else if (rel.equals("timebundle")) {
-				mTimeBundle = new TimeBundle(link);
-			}
-		}    	
-    	    	
-    	// Sorting can take a long time.  If there are just a few (like from a TimeGate), 
-    	// go ahead and sort since they are not usually listed in order.  But a large 
-    	// listing from a TimeMap is already sorted by the LANL proxy.
-    	if (addToMementoList && mMementos.size() < 5) {
-    		log.debug("Sorting short Memento list...");
-    		Collections.sort(mMementos);
+		log.debug("Start parsing " + links.length() + " characters of links");
+		if (isParallelParse(links.length()))
+			return parseLinksInParallel(links.toCharArray(), links.length(), addToMementoList);
+		return parseLinks(new LinkParser(links), addToMementoList);
+    }
+    
+    /**
+     * As {@link #parseCsvLinks(String, boolean)}, but reads the links from the
+     * given Reader as they arrive rather than needing the whole text up front.
+     * The Reader is not closed.
+     * 
+     * @param links
+     * @throws IOException if reading fails, after keeping any links parsed 
+     * before the failure.
+     */
+    public Memento parseCsvLinks(Reader links, boolean addToMementoList) throws IOException {
+		log.debug("Start streaming links");
+    	LinkParser parser = new LinkParser(links);
+    	Memento returnMemento = parseLinks(parser, addToMementoList);
+    	if (parser.ioException() != null)
+    		throw parser.ioException();
+    	return returnMemento;
+    }
+    
+    private Memento parseLinks(LinkParser parser, boolean addToMementoList) {
+    	LinkHandler handler = new LinkHandler(addToMementoList);
+    	parser.parse(handler);
+    	return finishParsing(handler, addToMementoList);
+    }
+    
+    private Memento parseLinksInParallel(char[] links, int length, boolean addToMementoList) {
+		log.debug("Parsing " + length + " characters of links in parallel");
+    	LinkHandler handler = new LinkHandler(addToMementoList);
+    	new ParallelLinkParser().parse(links, 0, length, handler);
+    	return finishParsing(handler, addToMementoList);
+    }
+    
+    private Memento finishParsing(LinkHandler handler, boolean addToMementoList) {
+    	// A few mementos (like from a TimeGate) are not usually listed in order, 
+    	// and a TimeMap may not be either.  This costs nothing if they are.
+    	if (addToMementoList && !mMementos.isSorted()) {
+    		log.debug("Sorting Memento list...");
+    		mMementos.ensureSorted();
     	}
     	
-    	log.debug("Finished parsing, found " + mementoLinks + " Memento links");		
+    	log.debug("Finished parsing, found " + handler.mementoLinks + " Memento links");		
     	log.debug("Total mementos: " + mMementos.size());
 				
 		// If these aren't set then this is likely a timemap 
@@ -446,8 +421,80 @@ public class MementoClient {
 		if (mLastMemento == null)
 			mLastMemento = mMementos.getLast();    
 		
-		return returnMemento;
-    }  
+		return handler.returnMemento;
+    }
+    
+    /**
+     * Updates the client's state from the parsed links, and passes them on
+     * to the caller's sink if there is one.
+     */
+    private class LinkHandler implements MementoSink {
+    	
+    	private final boolean addToMementoList;
+    	
+    	private Memento returnMemento;
+    	
+    	private int mementoLinks;
+    	
+    	LinkHandler(boolean addToMementoList) {
+    		this.addToMementoList = addToMementoList;
+        	mFirstMemento = null;
+        	mLastMemento = null;
+    	}
+
+		@Override
+		public void onMemento(Memento m) {
+			mementoLinks++;
+			
+			// There may be just one memento in the links, so it should be returned
+			if (returnMemento == null)
+				returnMemento = m;
+			
+			if (addToMementoList) {
+				if (mMementoSink != null)
+					mMementoSink.onMemento(m);
+				else
+					mMementos.add(m);
+			}
+			
+			// First and last should be reported in 302 response
+			if (m.isFirst()) {
+				mFirstMemento = m;
+			}
+			if (m.isLast()) {
+				mLastMemento = m;
+			}
+		}
+
+		@Override
+		public void onTimeMap(TimeMap tm) {
+			// See if this is really a new timemap (server could be mistaken, and
+			// we don't want to be caught in an infinite loop
+			if( "application/link-format".equalsIgnoreCase(tm.getType()) ) {
+				if (!timeMapAlreadyExists(tm)) {
+					log.debug("Adding new timemap " + tm.toString());
+					mTimeMaps.add(tm);
+					if (mMementoSink != null)
+						mMementoSink.onTimeMap(tm);
+				}
+			} else {
+				log.debug("Skipping timemap in unsupported format "+tm.getType());
+			}
+		}
+
+		@Override
+		public void onTimeBundle(TimeBundle tb) {
+			mTimeBundle = tb;
+			if (mMementoSink != null)
+				mMementoSink.onTimeBundle(tb);
+		}
+
+		@Override
+		public void onOriginal(String url) {
+			if (mMementoSink != null)
+				mMementoSink.onOriginal(url);
+		}
+    }
  
     /**
      * Return a timemap that has not been downloaded yet.
@@ -523,8 +570,24 @@ public class MementoClient {
 						tm.getType().equals("application/link-format") ||
 						tm.getType().equals("application/link-format")) {
 					try {
-						String responseBody = EntityUtils.toString(response.getEntity());
-						parseCsvLinks(responseBody, true); 
+						// Parse the links as they are downloaded, rather than holding 
+						// the whole TimeMap in memory first
+						HttpEntity entity = response.getEntity();
+						Reader body = getContentReader(entity);
+						try {
+							if (isParallelParse(entity.getContentLength())) {
+								// Big enough to be worth reading in full and splitting up.
+								// Decoding never gives more chars than there are bytes.
+								char[] buf = new char[(int) entity.getContentLength()];
+								int length = readFully(body, buf);
+								parseLinksInParallel(buf, length, true);
+							}
+							else {
+								parseCsvLinks(body, true);
+							}
+						} finally {
+							body.close();
+						}
 					} catch (Exception ex) {
 						//log.error(Utilities.getExceptionStackTraceAsString(ex));
 						ex.printStackTrace();
@@ -552,6 +615,92 @@ public class MementoClient {
         return true;
     }
     
+    /**
+     * Download a single TimeMap page and index it with {@link TimeMapIndex},
+     * which keeps the body as bytes and only decodes a Memento's URL when
+     * it is asked for.  Other pages are not followed, but are listed by
+     * {@link TimeMapIndex#getTimeMaps()}.
+     *
+     * @param timeMapUrl
+     * @return the index, or null if the server did not return the TimeMap.
+     * @throws IOException
+     */
+    public TimeMapIndex getTimeMapIndex(String timeMapUrl) throws IOException {
+        HttpGet httpget = new HttpGet(timeMapUrl);
+        httpget.setHeader("User-Agent", mUserAgent);
+        log.debug("Indexing TimeMap: " + httpget.getURI());
+
+        HttpResponse response = httpClient.execute(httpget);
+        HttpEntity entity = response.getEntity();
+        try {
+        	int statusCode = response.getStatusLine().getStatusCode();
+        	if (statusCode != 200 || entity == null) {
+        		log.debug("Unexpected response code in getTimeMapIndex = " + statusCode);
+        		return null;
+        	}
+        	byte[] body = EntityUtils.toByteArray(entity);
+        	return TimeMapIndex.parse(body, 0, body.length, getCharset(entity));
+        } finally {
+        	EntityUtils.consume(entity);
+        }
+    }
+
+    /**
+     * Wrap the entity content in a Reader using the declared charset,
+     * defaulting to ISO-8859-1 as EntityUtils.toString() does.
+     * 
+     * @param entity
+     * @return
+     * @throws IOException
+     */
+    private static Reader getContentReader(HttpEntity entity) throws IOException {
+    	return new InputStreamReader(entity.getContent(), getCharset(entity));
+    }
+
+    static Charset getCharset(HttpEntity entity) {
+    	Charset charset = null;
+    	ContentType contentType = ContentType.get(entity);
+    	if (contentType != null)
+    		charset = contentType.getCharset();
+    	if (charset == null)
+    		charset = HTTP.DEF_CONTENT_CHARSET;
+    	return charset;
+    }
+    
+    /**
+     * Read until the end of the input or buf is full.
+     * @return the number of characters read. 
+     */
+    private static int readFully(Reader reader, char[] buf) throws IOException {
+    	int length = 0;
+    	int read;
+    	while (length < buf.length && (read = reader.read(buf, length, buf.length - length)) != -1)
+    		length += read;
+    	return length;
+    }
+    
+    /**
+     * Parse bodies of more than the given number of characters on several 
+     * threads, using {@link ParallelLinkParser}.  For TimeMaps this means the 
+     * body is read in full first, and only applies if the server gives the
+     * Content-Length.  Smaller bodies are parsed as they are downloaded. 
+     * Set to -1 (the default) to always parse on the calling thread.
+     * 
+     * @param threshold
+     */
+    public void setParallelParseThreshold(int threshold) {
+    	this.mParallelParseThreshold = threshold;
+    }
+    
+    public int getParallelParseThreshold() {
+    	return this.mParallelParseThreshold;
+    }
+    
+    private boolean isParallelParse(long length) {
+    	return mParallelParseThreshold >= 0 && length > mParallelParseThreshold 
+    			&& length < Integer.MAX_VALUE;
+    }
+    
     //@Deprecated
     public void setTargetURI( String target ) {
     	log.debug("Looking for "+target);
@@ -562,6 +711,22 @@ public class MementoClient {
     	this.makeHttpRequests( target );
     }
 
+    /**
+     * Pass the Mementos found in TimeMaps to the given sink as they are parsed,
+     * instead of collecting them in the list returned by {@link #getMementos()}.
+     * The sink is also told about each new TimeMap, TimeBundle and original 
+     * resource.  Set to null to go back to collecting Mementos in the list.
+     * 
+     * @param sink
+     */
+    public void setMementoSink(MementoSink sink) {
+    	this.mMementoSink = sink;
+    }
+    
+    public MementoSink getMementoSink() {
+    	return this.mMementoSink;
+    }
+
     //@Deprecated
     public MementoList getMementos() {
     	return this.mMementos;
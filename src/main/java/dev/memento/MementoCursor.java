@@ -0,0 +1,111 @@
+package dev.memento;
+
+/*
+ * #%L
+ * mementoweb-java-client
+ * %%
+ * Copyright (C) 2012 - 2013 The British Library
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+/**
+ * A position in a {@link MementoIndex}, for stepping through the mementos
+ * one at a time.  Each reader should have its own cursor; many cursors
+ * can share one {@link MementoSnapshot}.
+ */
+public class MementoCursor {
+
+	private final MementoIndex mIndex;
+
+	// The currently selected memento
+	private int mCurrent = -1;
+
+	public MementoCursor(MementoIndex index) {
+		mIndex = index;
+	}
+
+	/**
+	 * Returns the Memento which is currently selected or null if there
+	 * is no current Memento.
+	 * @return
+	 */
+	public Memento getCurrent() {
+		if (mCurrent >= 0 && mCurrent < mIndex.size())
+			return mIndex.get(mCurrent);
+		else
+			return null;
+	}
+
+	/**
+	 * Return the index of the current Memento (0 to size-1) or -1 if there
+	 * is no current Memento.
+	 * @return
+	 */
+	public int getCurrentIndex() {
+		return mCurrent;
+	}
+
+	/**
+	 * Set the current index to the given integer if the number is >= -1 
+	 * (for the case of "un-setting" the index) up to the size-1.
+	 * @param index
+	 */
+	public void setCurrentIndex(int index) {
+		if (index >= -1 && index < mIndex.size())
+			mCurrent = index;
+	}
+
+	/**
+	 * Make the memento closest to the given date the current one.
+	 * @param date
+	 * @return the memento, or null if there are none.
+	 */
+	public Memento moveTo(SimpleDateTime date) {
+		Memento memento = mIndex.getClosestDate(date);
+		if (memento != null)
+			mCurrent = mIndex.getIndex(memento.getDateTime());
+		return memento;
+	}
+
+	/**
+	 * Move to the next memento.  From before the first memento, this is 
+	 * the first one.
+	 * @return the memento, or null if we're at the end or there are no 
+	 * mementos.
+	 */
+	public Memento getNext() {
+		if (mCurrent < mIndex.size() - 1) {
+			mCurrent++;
+			return mIndex.get(mCurrent);
+		}
+		else
+			return null;
+	}
+
+	/**
+	 * Move to the previous memento.
+	 * @return the memento, or null if we're at the start or there is no
+	 * current memento.
+	 */
+	public Memento getPrevious() {
+		if (mCurrent > 0 && mCurrent < mIndex.size()) {
+			mCurrent--;
+			return mIndex.get(mCurrent);
+		}
+		else
+			return null;
+	}
+}
@@ -0,0 +1,107 @@
+package dev.memento;
+
+/*
+ * #%L
+ * mementoweb-java-client
+ * %%
+ * Copyright (C) 2012 - 2013 The British Library
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.util.LinkedHashMap;
+import java.util.TreeMap;
+
+/**
+ * Read access to a date-ordered run of Mementos, as needed to navigate
+ * them by date.  Implemented by {@link MementoList}, which can be added to,
+ * and by {@link MementoSnapshot}, which can be shared between threads.
+ */
+public interface MementoIndex extends Iterable<Memento> {
+
+	int size();
+
+	Memento get(int index);
+
+	/**
+	 * @param index
+	 * @return the datetime of the memento at the given index, as seconds
+	 * since the epoch.
+	 */
+	long getEpochSecond(int index);
+
+	Memento getFirst();
+
+	Memento getLast();
+
+	/**
+	 * @param date
+	 * @return the memento closest to the given date, or null if there are
+	 * none.
+	 */
+	Memento getClosestDate(SimpleDateTime date);
+
+	/**
+	 * @param datetime
+	 * @return the index of the memento with the given datetime, -1 if there
+	 * is none.
+	 */
+	int getIndex(SimpleDateTime datetime);
+
+	/**
+	 * @param date
+	 * @return the index of the first memento on the given date (in GMT),
+	 * -1 if there is none.
+	 */
+	int getIndexByDate(SimpleDateTime date);
+
+	/**
+	 * @param date
+	 * @return the first memento after the given date, or null if there is
+	 * none.
+	 */
+	Memento getNext(SimpleDateTime date);
+
+	/**
+	 * @param date
+	 * @return the last memento before the given date, or null if there is
+	 * none.
+	 */
+	Memento getPrevious(SimpleDateTime date);
+
+	boolean isFirst(SimpleDateTime date);
+
+	boolean isLast(SimpleDateTime date);
+
+	CharSequence[] getAllDates();
+
+	/**
+	 * @return the number of mementos in each year.
+	 */
+	TreeMap<Integer,Integer> getAllYears();
+
+	/**
+	 * @param year
+	 * @return the number of mementos in each month of the year that has
+	 * any, by month name.
+	 */
+	LinkedHashMap<CharSequence,Integer> getMonthsForYear(int year);
+
+	/**
+	 * @return a new cursor, positioned before the first memento, for moving
+	 * through the mementos one at a time.
+	 */
+	MementoCursor cursor();
+}
@@ -43,78 +43,516 @@ package dev.memento;
 
 
 import java.io.Serializable;
-import java.text.DateFormatSymbols;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.List;
 import java.util.TreeMap;
-import java.util.TreeSet;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
 
-public class MementoList extends ArrayList<Memento> implements Serializable {
+public class MementoList extends ArrayList<Memento> implements MementoIndex, Serializable {
 	Logger log = LogManager.getLogger(MementoList.class.getCanonicalName());
 
 	private static final long serialVersionUID = 1L;
 
 	public static final String LOG_TAG = "MementoBrowser_tag";
 	
-	// Unique, ordered list of dates found in the mementos
-	//private SortedSet <String> mYearList;
+	// The currently selected memento
+	private int mCurrent = -1;
 	
-	private TreeMap<Integer, TreeSet<Memento>> mYearList;
+	// Most memento URLs are an archive's prefix, a timestamp and the original
+	// URL, so only the timestamp need be kept for each memento
+	private static final int MAX_URL_TEMPLATES = 64;
+	private ArrayList<UrlTemplate> mUrlTemplates;
+	private UrlTemplate mLastUrlTemplate;
 	
-	// Should be used very infrequently. www.cnn.com uses it because there are
-	// thousands of mementos per year in some cases.
-	private TreeMap<Integer, ArrayList<ArrayList<Memento>>> mYearToMonthList;
+	// The datetimes of the mementos as epoch seconds, in the same order, so
+	// that the list can be searched without touching the Mementos, and the
+	// number of mementos in each day, week, month and year, indexed by
+	// Granularity.ordinal().  Kept in step by add() and set(), and rebuilt
+	// after any other change.
+	private transient long[] mEpochs;
+	private transient BucketCounts[] mBucketCounts;
+	private transient int mColumnsModCount = -1;
 	
-	// The currently selected memento
-	private int mCurrent = -1;
+	// The number of mementos that are earlier than the one before them, so
+	// 0 when the list is in date order.  Kept in step with mEpochs.
+	private transient int mDescents;
+	
+	// Where each year starts in the list, built when first needed after a 
+	// change: the mementos for mYears[k] are at mYearStarts[k] up to 
+	// mYearStarts[k + 1].
+	private transient int[] mYears;
+	private transient int[] mYearStarts;
+	private transient int mYearIndexModCount = -1;
+	
+	// Navigation by date, as for the other MementoIndex implementations
+	private transient AbstractMementoIndex mIndex;
 	
 	public MementoList() {
-		//mYearList = new TreeSet<String>();		
-		mYearList = new TreeMap<Integer, TreeSet<Memento>>();
-		mYearToMonthList = new TreeMap<Integer, ArrayList<ArrayList<Memento>>>();
+		mUrlTemplates = new ArrayList<UrlTemplate>();
+		mEpochs = new long[10];
+		mBucketCounts = newBucketCounts();
+		mColumnsModCount = modCount;
 	}
 	
+	/**
+	 * The list may keep a copy of the memento, with its URL compacted, 
+	 * rather than the memento itself.  The memento is not changed.
+	 */
 	@Override
 	public void add(int index, Memento memento) {
-		//String year = Integer.toString(memento.getDateTime().getYear());
-		//mYearList.add(year);
-		int year = memento.getDateTime().getYear();
-		addMementoToYearList(year, memento);		
+		memento = compactUrl(memento);
+		boolean inStep = isColumnsInStep();
 		super.add(index, memento);
+		if (inStep) {
+			long epochSecond = memento.getDateTime().getEpochSecond();
+			ensureEpochsCapacity(size());
+			System.arraycopy(mEpochs, index, mEpochs, index + 1, size() - 1 - index);
+			mEpochs[index] = epochSecond;
+			count(mBucketCounts, epochSecond, 1);
+			mDescents -= descent(index - 1, index + 1);
+			mDescents += descent(index - 1, index) + descent(index, index + 1);
+			mColumnsModCount = modCount;
+		}
 	}
 
+	/**
+	 * The list may keep a copy of the memento, with its URL compacted, 
+	 * rather than the memento itself.  The memento is not changed.
+	 */
 	@Override
 	public boolean add(Memento memento) {
-
-		//String year = Integer.toString(memento.getDateTime().getYear());
-		//mYearList.add(year);
-		int year = memento.getDateTime().getYear();
-		addMementoToYearList(year, memento);	
-		return super.add(memento);
+		memento = compactUrl(memento);
+		boolean inStep = isColumnsInStep();
+		super.add(memento);
+		if (inStep) {
+			long epochSecond = memento.getDateTime().getEpochSecond();
+			ensureEpochsCapacity(size());
+			mEpochs[size() - 1] = epochSecond;
+			count(mBucketCounts, epochSecond, 1);
+			mDescents += descent(size() - 2, size() - 1);
+			mColumnsModCount = modCount;
+		}
+		return true;
 	}
 
-	private void addMementoToYearList(int year, Memento memento) {
-		TreeSet<Memento> list = mYearList.get(year);
-		if (list != null) {
-			list.add(memento);
+	@Override
+	public Memento set(int index, Memento memento) {
+		memento = compactUrl(memento);
+		Memento previous = super.set(index, memento);
+		if (isColumnsInStep()) {
+			long epochSecond = memento.getDateTime().getEpochSecond();
+			count(mBucketCounts, mEpochs[index], -1);
+			mDescents -= descent(index - 1, index) + descent(index, index + 1);
+			mEpochs[index] = epochSecond;
+			count(mBucketCounts, epochSecond, 1);
+			mDescents += descent(index - 1, index) + descent(index, index + 1);
 		}
-		else {
-			list = new TreeSet<Memento>();
-			list.add(memento);
-			mYearList.put(year, list);
+		// set() leaves modCount alone, so the year index can't tell
+		mYears = null;
+		return previous;
+	}
+	
+	private boolean isColumnsInStep() {
+		return mEpochs != null && mColumnsModCount == modCount;
+	}
+	
+	/**
+	 * @return 1 if the memento at j is earlier than the one at i, else 0,
+	 * including when either is out of range.
+	 */
+	private int descent(int i, int j) {
+		if (i < 0 || j >= size())
+			return 0;
+		return mEpochs[j] < mEpochs[i] ? 1 : 0;
+	}
+	
+	private void ensureEpochsCapacity(int capacity) {
+		if (mEpochs.length < capacity)
+			mEpochs = Arrays.copyOf(mEpochs, Math.max(capacity, mEpochs.length * 2));
+	}
+	
+	private void updateColumns() {
+		if (isColumnsInStep())
+			return;
+		long[] epochs = new long[Math.max(size(), 10)];
+		BucketCounts[] bucketCounts = newBucketCounts();
+		int descents = 0;
+		for (int i = 0; i < size(); i++) {
+			epochs[i] = get(i).getDateTime().getEpochSecond();
+			count(bucketCounts, epochs[i], 1);
+			if (i > 0 && epochs[i] < epochs[i - 1])
+				descents++;
+		}
+		mEpochs = epochs;
+		mBucketCounts = bucketCounts;
+		mDescents = descents;
+		mColumnsModCount = modCount;
+	}
+	
+	private long[] epochs() {
+		updateColumns();
+		return mEpochs;
+	}
+	
+	private BucketCounts bucketCounts(Granularity granularity) {
+		updateColumns();
+		return mBucketCounts[granularity.ordinal()];
+	}
+	
+	private static BucketCounts[] newBucketCounts() {
+		BucketCounts[] bucketCounts = new BucketCounts[Granularity.values().length];
+		for (int g = 0; g < bucketCounts.length; g++)
+			bucketCounts[g] = new BucketCounts();
+		return bucketCounts;
+	}
+	
+	private static void count(BucketCounts[] bucketCounts, long epochSecond, int delta) {
+		for (Granularity granularity : Granularity.values()) {
+			BucketCounts counts = bucketCounts[granularity.ordinal()];
+			if (delta > 0)
+				counts.increment(granularity.bucketOf(epochSecond));
+			else
+				counts.decrement(granularity.bucketOf(epochSecond));
+		}
+	}
+	
+	/**
+	 * Count the mementos in each bucket of the given size from the one that
+	 * from falls in to the one that until falls in, e.g. for drawing a 
+	 * sparkline.  This takes time in proportion to the number of buckets,
+	 * not the number of mementos.
+	 * @param from
+	 * @param until
+	 * @param granularity
+	 * @return the counts, the first for the bucket 
+	 * granularity.bucketOf(from.getEpochSecond()), or an empty array if until
+	 * is before from.
+	 */
+	public int[] getDensity(SimpleDateTime from, SimpleDateTime until, Granularity granularity) {
+		int first = granularity.bucketOf(from.getEpochSecond());
+		int last = granularity.bucketOf(until.getEpochSecond());
+		if (last < first)
+			return new int[0];
+		BucketCounts counts = bucketCounts(granularity);
+		int[] density = new int[last - first + 1];
+		for (int bucket = first; bucket <= last; bucket++)
+			density[bucket - first] = counts.get(bucket);
+		return density;
+	}
+	
+	/**
+	 * @param index
+	 * @return the datetime of the memento at the given index, as seconds
+	 * since the epoch.
+	 */
+	public long getEpochSecond(int index) {
+		if (index < 0 || index >= size())
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+		return epochs()[index];
+	}
+	
+	/**
+	 * Merge lists that are each in date order into one list in date order,
+	 * e.g. the TimeMaps from several archives.  Where mementos have the same
+	 * datetime, to the second, only the first is kept, as for 
+	 * {@link DedupPolicy#ONE_PER_SECOND}.  This applies within a list as 
+	 * well as between lists.  A list that is not in date order is sorted 
+	 * (in a copy) first.
+	 * @param runs
+	 * @return a new list.
+	 */
+	public static MementoList merge(List<MementoList> runs) {
+		return merge(runs, DedupPolicy.ONE_PER_SECOND);
+	}
+	
+	/**
+	 * As {@link #merge(List)}, but with a choice of what to do with 
+	 * mementos that have the same datetime.
+	 * @param runs
+	 * @param policy
+	 * @return a new list.
+	 */
+	public static MementoList merge(List<MementoList> runs, DedupPolicy policy) {
+		int total = 0;
+		MementoList[] lists = new MementoList[runs.size()];
+		for (int r = 0; r < lists.length; r++) {
+			MementoList run = runs.get(r);
+			if (!run.isSorted()) {
+				run = (MementoList) run.clone();
+				run.ensureSorted();
+			}
+			lists[r] = run;
+			total += run.size();
+		}
+		
+		// Min-heap of the lists that have mementos left, ordered by the 
+		// datetime of the next memento and then by position in runs
+		int[] heap = new int[lists.length];
+		int[] next = new int[lists.length];
+		int heapSize = 0;
+		for (int r = 0; r < lists.length; r++) {
+			if (lists[r].size() > 0)
+				heap[heapSize++] = r;
+		}
+		for (int i = heapSize / 2 - 1; i >= 0; i--)
+			siftDown(heap, heapSize, i, lists, next);
+		
+		MementoList merged = new MementoList();
+		merged.ensureCapacity(total);
+		while (heapSize > 0) {
+			int r = heap[0];
+			long epochSecond = lists[r].epochs()[next[r]];
+			Memento memento = lists[r].get(next[r]);
+			int last = merged.size() - 1;
+			if (last < 0 || !policy.isOnePerSecond() || merged.epochs()[last] != epochSecond)
+				merged.add(memento);
+			else if (policy.prefers(memento, merged.get(last)))
+				merged.set(last, memento);
+			if (++next[r] == lists[r].size())
+				heap[0] = heap[--heapSize];
+			siftDown(heap, heapSize, 0, lists, next);
+		}
+		return merged;
+	}
+	
+	private static void siftDown(int[] heap, int heapSize, int i, MementoList[] lists, int[] next) {
+		while (true) {
+			int smallest = i;
+			int left = 2 * i + 1;
+			int right = left + 1;
+			if (left < heapSize && isBefore(heap[left], heap[smallest], lists, next))
+				smallest = left;
+			if (right < heapSize && isBefore(heap[right], heap[smallest], lists, next))
+				smallest = right;
+			if (smallest == i)
+				return;
+			int r = heap[i];
+			heap[i] = heap[smallest];
+			heap[smallest] = r;
+			i = smallest;
+		}
+	}
+	
+	private static boolean isBefore(int r1, int r2, MementoList[] lists, int[] next) {
+		long e1 = lists[r1].epochs()[next[r1]];
+		long e2 = lists[r2].epochs()[next[r2]];
+		return e1 < e2 || (e1 == e2 && r1 < r2);
+	}
+	
+	/**
+	 * @return true if the mementos are in date order.  This is kept track
+	 * of as mementos are added, so is quick to ask.
+	 */
+	public boolean isSorted() {
+		updateColumns();
+		return mDescents == 0;
+	}
+	
+	/**
+	 * Put the mementos in date order, if they are not already, keeping 
+	 * mementos with the same datetime in the order they were in.  The
+	 * navigation methods rely on this.
+	 * 
+	 * A list that is already in order is not touched.  Otherwise the runs
+	 * that are in order, e.g. the pages of a paged TimeMap, are merged, so
+	 * a list that is nearly in order is quick to sort.
+	 */
+	public void ensureSorted() {
+		if (isSorted())
+			return;
+		Memento current = getCurrent();
+		
+		// Find the runs: run r is from starts[r] up to starts[r + 1]
+		int[] starts = new int[mDescents + 2];
+		int runs = 0;
+		starts[runs++] = 0;
+		for (int i = 1; i < size(); i++) {
+			if (mEpochs[i] < mEpochs[i - 1])
+				starts[runs++] = i;
+		}
+		starts[runs] = size();
+		
+		// Merge neighbouring runs in pairs until there is one
+		Memento[] mementos = toArray(new Memento[size()]);
+		long[] epochs = Arrays.copyOf(mEpochs, size());
+		Memento[] mementosTo = new Memento[size()];
+		long[] epochsTo = new long[size()];
+		while (runs > 1) {
+			int merged = 0;
+			for (int r = 0; r < runs; r += 2) {
+				int from = starts[r];
+				int mid = starts[Math.min(r + 1, runs)];
+				int to = starts[Math.min(r + 2, runs)];
+				int i = from, j = mid, k = from;
+				while (i < mid && j < to) {
+					if (epochs[j] < epochs[i]) {
+						mementosTo[k] = mementos[j];
+						epochsTo[k++] = epochs[j++];
+					}
+					else {
+						mementosTo[k] = mementos[i];
+						epochsTo[k++] = epochs[i++];
+					}
+				}
+				System.arraycopy(mementos, i, mementosTo, k, mid - i);
+				System.arraycopy(epochs, i, epochsTo, k, mid - i);
+				k += mid - i;
+				System.arraycopy(mementos, j, mementosTo, k, to - j);
+				System.arraycopy(epochs, j, epochsTo, k, to - j);
+				starts[merged++] = from;
+			}
+			starts[merged] = size();
+			runs = merged;
+			Memento[] m = mementos;
+			mementos = mementosTo;
+			mementosTo = m;
+			long[] e = epochs;
+			epochs = epochsTo;
+			epochsTo = e;
+		}
+		
+		for (int i = 0; i < mementos.length; i++) {
+			super.set(i, mementos[i]);
+			if (mementos[i] == current)
+				mCurrent = i;
+		}
+		
+		// As ArrayList.sort() does, so iterators see the change.  The counts 
+		// are the same in any order.
+		modCount++;
+		mEpochs = epochs;
+		mDescents = 0;
+		mColumnsModCount = modCount;
+	}
+	
+	private AbstractMementoIndex index() {
+		if (mIndex == null)
+			mIndex = new Index();
+		return mIndex;
+	}
+	
+	/**
+	 * The navigation methods of {@link AbstractMementoIndex}, searching this
+	 * list's epochs.
+	 */
+	private class Index extends AbstractMementoIndex {
+		public int size() {
+			return MementoList.this.size();
+		}
+		
+		public Memento get(int index) {
+			return MementoList.this.get(index);
 		}
-	}	
 		
+		public long getEpochSecond(int index) {
+			return MementoList.this.getEpochSecond(index);
+		}
+		
+		@Override
+		protected int lowerBound(int from, int to, long epochSecond) {
+			return MementoList.this.lowerBound(from, to, epochSecond);
+		}
+	}
+	
+	/**
+	 * Binary search for the first memento at or after the given time.  Like
+	 * the rest of the navigation methods, this relies on the list being in
+	 * date order, as TimeMaps are.
+	 * @param epochSecond
+	 * @return the index of the memento, or size() if there is none.
+	 */
+	private int lowerBound(long epochSecond) {
+		return lowerBound(0, size(), epochSecond);
+	}
+	
+	private int lowerBound(int from, int to, long epochSecond) {
+		long[] epochs = epochs();
+		int low = from;
+		int high = to;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (epochs[mid] < epochSecond)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	/**
+	 * Keep the memento's URL as a template and timestamp, if it fits one 
+	 * that is in use or there is room for another template.  URLs that
+	 * don't fit are kept as they are.  The memento itself is left alone, as
+	 * others may hold it.
+	 * @param memento
+	 * @return a copy of the memento with its URL compacted, or the memento
+	 * if its URL is already compact or cannot be.
+	 */
+	private Memento compactUrl(Memento memento) {
+		if (memento.getUrlTemplate() != null)
+			return memento;
+		String url = memento.getUrl();
+		if (url == null)
+			return memento;
+		int timestampStart = UrlTemplate.findTimestamp(url);
+		if (timestampStart < 0)
+			return memento;
+		UrlTemplate template = getUrlTemplate(url, timestampStart);
+		if (template == null)
+			return memento;
+		Memento copy = new Memento();
+		copy.setUrl(template, UrlTemplate.parseTimestamp(url, timestampStart));
+		copy.setRels(memento.getRels());
+		copy.setDateTime(memento.getDateTime());
+		copy.setArchiveId(memento.getArchiveId());
+		return copy;
+	}
+
+	private UrlTemplate getUrlTemplate(String url, int timestampStart) {
+		// Mementos usually arrive an archive at a time
+		if (mLastUrlTemplate != null && mLastUrlTemplate.matches(url, timestampStart))
+			return mLastUrlTemplate;
+		for (UrlTemplate template : mUrlTemplates) {
+			if (template.matches(url, timestampStart)) {
+				mLastUrlTemplate = template;
+				return template;
+			}
+		}
+		if (mUrlTemplates.size() == MAX_URL_TEMPLATES)
+			return null;
+		mLastUrlTemplate = UrlTemplate.forUrl(url, timestampStart);
+		mUrlTemplates.add(mLastUrlTemplate);
+		return mLastUrlTemplate;
+	}
+
+	/**
+	 * The copy works out its own epochs, counts and index rather than 
+	 * sharing them.
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public Object clone() {
+		MementoList copy = (MementoList) super.clone();
+		copy.mUrlTemplates = (ArrayList<UrlTemplate>) mUrlTemplates.clone();
+		copy.mEpochs = null;
+		copy.mBucketCounts = null;
+		copy.mColumnsModCount = -1;
+		copy.mYears = null;
+		copy.mYearStarts = null;
+		copy.mYearIndexModCount = -1;
+		copy.mIndex = null;
+		return copy;
+	}
+	
 	@Override
 	public void clear() {
-		mYearList.clear();
-		mYearToMonthList.clear();
+		mUrlTemplates.clear();
+		mLastUrlTemplate = null;
 		mCurrent = -1;
 		super.clear();
 	}	
@@ -138,33 +576,7 @@ public class MementoList extends ArrayList<Memento> implements Serializable {
 	 * @return
 	 */
 	public Memento getClosestDate(SimpleDateTime date) {
-		
-		int i = 0;
-		while (i < size() && get(i).getDateTime().compareTo(date) < 0) 
-    		i++;
-		
-		if (size() == 0)
-			return null;
-		else if (i == size())
-			return getLast();
-		else if (i == 0 || get(i).getDateTime().compareTo(date) == 0)
-			return get(i);
-		else {
-			// See if date is closer to i or i-1
-			Date newerDate = get(i).getDateTime().getDate();
-			Date olderDate = get(i-1).getDateTime().getDate();
-						
-			int diffInDays1 = (int)Math.round((newerDate.getTime() - date.getDate().getTime()) 
-	                 / (1000 * 60 * 60 * 24));			
-			
-			int diffInDays2 = (int)Math.round((date.getDate().getTime() - olderDate.getTime()) 
-	                 / (1000 * 60 * 60 * 24));			
-			
-			if (diffInDays1 < diffInDays2)
-				return get(i);
-			else
-				return get(i-1);
-		}			
+		return index().getClosestDate(date);
 	}
 	
 	
@@ -175,12 +587,7 @@ public class MementoList extends ArrayList<Memento> implements Serializable {
 	 * @return
 	 */
 	public int getIndex(SimpleDateTime datetime) {
-    	for (int i = 0; i < size(); i++) {
-    		if (get(i).getDateTime().equals(datetime))
-    			return i;
-    	}
-    	
-    	return -1;
+		return index().getIndex(datetime);
 	}
 	
 	/**
@@ -190,11 +597,7 @@ public class MementoList extends ArrayList<Memento> implements Serializable {
 	 * @return
 	 */
 	public int getIndexByDate(SimpleDateTime date) {
-    	for (int i = 0; i < size(); i++) {   		
-    		if (get(i).getDateTime().equalsDate(date))
-    			return i;
-    	}
-    	return -1;
+		return index().getIndexByDate(date);
 	}
 	
 
@@ -222,21 +625,15 @@ public class MementoList extends ArrayList<Memento> implements Serializable {
 	 * @return
 	 */
 	public Memento getFirst() {
-		if (this.size() > 0)
-			return get(0);
-		else
-			return null;
+		return index().getFirst();
 	}
 	
 	/**
 	 * Returns the last Memento in the list or null if there are no Mementos.
 	 * @return
 	 */
-	public Memento getLast() {	
-		if (this.size() > 0)
-			return get(size() - 1);
-		else
-			return null;
+	public Memento getLast() {
+		return index().getLast();
 	}
 		
 	/**
@@ -260,27 +657,7 @@ public class MementoList extends ArrayList<Memento> implements Serializable {
 	 * @return
 	 */
 	public Memento getNext(SimpleDateTime date) {
-		
-		// Search through the mementos
-		int i = 0;
-		while (i < size() && get(i).getDateTime().compareTo(date) < 0) 
-    		i++;
-				
-		if (i == size())
-			return null;    // At the end of the list!
-		else if (get(i).getDateTime().compareTo(date) == 0) {
-			// Found the exact one
-			i++;
-			if (i == size())
-				return null;   // At the end of the list!
-			else
-				return get(i);
-		}
-		else {
-			// Memento with date not found so return this memento which
-			// has a newer date
-			return get(i);
-		}
+		return index().getNext(date);
 	}
 	
 	public Memento getPrevious() {
@@ -301,26 +678,7 @@ public class MementoList extends ArrayList<Memento> implements Serializable {
 	 * @return
 	 */
 	public Memento getPrevious(SimpleDateTime date) {
-		
-		// Search through the mementos
-		int i = 0;
-		while (i < size() && get(i).getDateTime().compareTo(date) < 0) 
-    		i++;
-				
-		if (i == 0)
-			return null;    // At the beginning of the list
-		else if (i < size() && get(i).getDateTime().compareTo(date) == 0) {
-			i--;
-			if (i < 0)
-				return null;   // At the beginning of the list!
-			else
-				return get(i);
-		}
-		else {
-			// Memento with date not found so return the previous memento which
-			// has an older date
-			return get(i - 1);
-		}
+		return index().getPrevious(date);
 	}
 	
 	
@@ -341,6 +699,56 @@ public class MementoList extends ArrayList<Memento> implements Serializable {
     	return dates;
 	}
 	
+	/**
+	 * Find where each year starts, with a binary search from the start of
+	 * one year for the start of the next, so this is quick even for long 
+	 * lists.
+	 */
+	private void buildYearIndex() {
+		if (mYearIndexModCount == modCount && mYears != null)
+			return;
+		long[] epochs = epochs();
+		int[] years = new int[16];
+		int[] starts = new int[17];
+		int count = 0;
+		int i = 0;
+		while (i < size()) {
+			int year = AbstractMementoIndex.yearOf(epochs[i]);
+			if (count == years.length) {
+				years = Arrays.copyOf(years, count * 2);
+				starts = Arrays.copyOf(starts, count * 2 + 1);
+			}
+			years[count] = year;
+			starts[count] = i;
+			count++;
+			i = lowerBound(i, size(), AbstractMementoIndex.startOfMonth(year + 1, 1));
+		}
+		starts[count] = size();
+		mYears = Arrays.copyOf(years, count);
+		mYearStarts = Arrays.copyOf(starts, count + 1);
+		mYearIndexModCount = modCount;
+	}
+	
+	/**
+	 * @param year
+	 * @return the index of the first memento in the year, and the index after
+	 * the last one.
+	 */
+	private int[] yearRange(int year) {
+		buildYearIndex();
+		int k = Arrays.binarySearch(mYears, year);
+		if (k < 0)
+			return new int[] { 0, 0 };
+		return new int[] { mYearStarts[k], mYearStarts[k + 1] };
+	}
+	
+	private int[] monthRange(int month, int year) {
+		int[] range = yearRange(year);
+		int start = lowerBound(range[0], range[1], AbstractMementoIndex.startOfMonth(year, month));
+		int end = month == 12 ? range[1] : lowerBound(start, range[1], AbstractMementoIndex.startOfMonth(year, month + 1));
+		return new int[] { start, end };
+	}
+	
 	/**
 	 * Return the years and number of dates available for each year for all the 
 	 * mementos. 
@@ -350,15 +758,13 @@ public class MementoList extends ArrayList<Memento> implements Serializable {
 						
 		TreeMap<Integer,Integer> years = new TreeMap<Integer, Integer>();
 		
-		int totalMementos = 0;
-		for (Map.Entry<Integer,TreeSet<Memento>> entry : mYearList.entrySet()) {
-			int year = entry.getKey();
-			TreeSet<Memento> mementos = entry.getValue();
-			years.put(year, mementos.size());	
-			totalMementos += mementos.size();
+		BucketCounts yearCounts = bucketCounts(Granularity.YEAR);
+		for (int year = yearCounts.first(); year < yearCounts.end(); year++) {
+			int count = yearCounts.get(year);
+			if (count > 0)
+				years.put(year, count);
 		}
 		
-		log.debug("totalMementos = " + totalMementos + "  size = " + this.size());
     	return years;
 	}
 	
@@ -371,160 +777,140 @@ public class MementoList extends ArrayList<Memento> implements Serializable {
 			
 		LinkedHashMap<CharSequence,Integer> months = new LinkedHashMap<CharSequence,Integer>();
 		
-		if (mYearToMonthList.size() == 0 || !mYearToMonthList.containsKey(year)) {
-			// Need to build list from scratch		
-						
-			TreeSet<Memento> mementos =  mYearList.get(year);
-			if (mementos == null) {
-				return months;
-			}
-			
-			// Array of all months and their mementos for this year
-			ArrayList<ArrayList<Memento>> monthList = mYearToMonthList.get(year);
-			if (monthList == null) {
-				monthList = new ArrayList<ArrayList<Memento>>();
-				
-				// List contains no mementos for 12 months
-				for (int mon = 0; mon < 12; mon++) {
-					monthList.add(null);
-				}
-				
-				mYearToMonthList.put(year, monthList);
-			}
-			
-			for (Memento m : mementos) {
-								
-				//String month = m.getDateTime().getMonthName();
-				int month = m.getDateTime().getMonth();
-								
-				// List of all mementos for this year and month
-				ArrayList<Memento> mementoList = monthList.get(month - 1);
-				if (mementoList == null) {
-					mementoList = new ArrayList<Memento>();
-					monthList.add(month - 1, mementoList);	
-				}
-				
-				mementoList.add(m);									
-			}
-		}
-
-		
 		// Return month counts, but ignore months with no dates
-		DateFormatSymbols df = new DateFormatSymbols();
-		months = new LinkedHashMap<CharSequence,Integer>();
-		ArrayList<ArrayList<Memento>> monthList = mYearToMonthList.get(year);
+		BucketCounts monthCounts = bucketCounts(Granularity.MONTH);
+		String[] monthNames = SimpleDateTime.getMonthNames();
 		for (int mon = 0; mon < 12; mon++) {
-			//System.out.println("month = " + mon);
-			if (monthList.get(mon) != null) {
-				String monthName = df.getMonths()[mon];
-				months.put(monthName, monthList.get(mon).size());	
-				//System.out.println("  size = " + monthList.get(mon).size());
-			}
+			int count = monthCounts.get(year * 12 + mon);
+			if (count > 0)
+				months.put(monthNames[mon], count);
 		}
 	    	
 		return months;
 	}
 	
-	public CharSequence[] getDatesForYear(int year) {
-				    	
-		TreeSet<Memento> mementos = mYearList.get(year);
-		if (mementos == null) {
-			// FIXME if (Log.LOG) Log.e(LOG_TAG, "getDatesForYear: No mementos could be found for the selected year " + year);
-			return new CharSequence[0];
+	/**
+	 * The mementos from one datetime up to another, found by binary search,
+	 * e.g. all those from 2005 to 2008, or for the last 90 days.
+	 * @param from
+	 * @param until
+	 * @return a view of the mementos at or after from and before until.
+	 */
+	public MementoRange range(SimpleDateTime from, SimpleDateTime until) {
+		int start = lowerBound(from.getEpochSecond());
+		int end = Math.max(start, lowerBound(start, size(), until.getEpochSecond()));
+		return new MementoRange(this, start, end);
+	}
+	
+	int getModCount() {
+		return modCount;
+	}
+	
+	/**
+	 * @param year
+	 * @return a view of the part of this list for the given year, if the 
+	 * list is in date order, or else a list of them in the order they are 
+	 * in here.
+	 */
+	public List<Memento> getMementosForYear(int year) {
+		if (!isSorted())
+			return select(AbstractMementoIndex.startOfMonth(year, 1), AbstractMementoIndex.startOfMonth(year + 1, 1));
+		int[] range = yearRange(year);
+		return subList(range[0], range[1]);
+	}
+	
+	/**
+	 * @param month from 1 to 12.
+	 * @param year
+	 * @return a view of the part of this list for the given month, if the
+	 * list is in date order, or else a list of them in the order they are 
+	 * in here.  Null if the month is out of range.
+	 */
+	public List<Memento> getMementosForMonthAndYear(int month, int year) {
+		if (month < 1 || month > 12)
+			return null;
+		if (!isSorted()) {
+			long until = month == 12 ? AbstractMementoIndex.startOfMonth(year + 1, 1) 
+					: AbstractMementoIndex.startOfMonth(year, month + 1);
+			return select(AbstractMementoIndex.startOfMonth(year, month), until);
 		}
-		
-		CharSequence[] dates = new CharSequence[mementos.size()];
-		int i = 0;
-		for (Memento m : mementos) {
-			dates[i] = m.getDateAndTimeFormatted();
-			i++;
+		int[] range = monthRange(month, year);
+		return subList(range[0], range[1]);
+	}
+	
+	/**
+	 * Look through the whole list, for when it is not in date order and
+	 * can't be searched.
+	 * @return the mementos at or after from and before until.
+	 */
+	private List<Memento> select(long from, long until) {
+		long[] epochs = epochs();
+		List<Memento> mementos = new ArrayList<Memento>();
+		for (int i = 0; i < size(); i++) {
+			if (epochs[i] >= from && epochs[i] < until)
+				mementos.add(get(i));
 		}
-		
-		//return mementos.toArray(new CharSequence[0]);
-		return dates;    	
+		return mementos;
+	}
+	
+	public CharSequence[] getDatesForYear(int year) {
+		return getDates(getMementosForYear(year));
 	}
 	
 	public Memento[] getByYear(int year) {
-		
-		TreeSet<Memento> mementos = mYearList.get(year);
-		if (mementos == null) {
-			return new Memento[0];
-		}
-				
-		return mementos.toArray(new Memento[0]);
+		return getMementosForYear(year).toArray(new Memento[0]);
 	}
 	
 	public Memento[] getByMonthAndYear(int month, int year) {
-				
-		if (month < 1 || month > 12)
+		List<Memento> mementos = getMementosForMonthAndYear(month, year);
+		if (mementos == null)
 			return null;
-		
-		ArrayList<ArrayList<Memento>> monthList = mYearToMonthList.get(year);
-		
-		if (monthList == null) {
-		
-			// This could happen if mYearToMonthList wasn't populated yet
-			getMonthsForYear(year);
-			
-			monthList = mYearToMonthList.get(year);
-			if (monthList == null) {
-				// Now we definitely can't find this year
-				return new Memento[0];
-			}
-		}		
-		
-		ArrayList<Memento> mlist = monthList.get(month - 1);
-		if (mlist == null)
-			return new Memento[0];
-		
-		return mlist.toArray(new Memento[0]);
+		return mementos.toArray(new Memento[0]);
 	}
 	
 	public CharSequence[] getDatesForMonthAndYear(int month, int year) {
-		
-		if (month < 1 || month > 12)
+		List<Memento> mementos = getMementosForMonthAndYear(month, year);
+		if (mementos == null)
 			return null;
-		
-		ArrayList<ArrayList<Memento>> monthList = mYearToMonthList.get(year);
-		
-		if (monthList == null) {
-		
-			// This could happen if mYearToMonthList wasn't populated yet
-			getMonthsForYear(year);
-			
-			monthList = mYearToMonthList.get(year);
-			if (monthList == null) {
-				// Now we definitely can't find this year
-				return new CharSequence[0];
-			}
-		}		
-		
-		ArrayList<Memento> mlist = monthList.get(month - 1);
-		if (mlist == null)
-			return new CharSequence[0];
-		
-		CharSequence[] dates = new CharSequence[mlist.size()];
+		return getDates(mementos);
+	}
+	
+	private static CharSequence[] getDates(List<Memento> mementos) {
+		CharSequence[] dates = new CharSequence[mementos.size()];
 		int i = 0;
-    	for (Memento m : mlist) { 
+    	for (Memento m : mementos) { 
     		dates[i] = m.getDateAndTimeFormatted();
     		i++;
     	}
-    	
     	return dates;
 	}
 
 	public boolean isFirst(SimpleDateTime date) {
-		if (size() > 0)
-			return get(0).getDateTime().equals(date);
-		else
-			return false;				
+		return index().isFirst(date);
 	}
 	
 	public boolean isLast(SimpleDateTime date) {
-		if (size() > 0)
-			return get(size() - 1).getDateTime().equals(date);
-		else
-			return false;				
+		return index().isLast(date);
+	}
+	
+	/**
+	 * The cursor sees changes to this list, so should not be used while 
+	 * another thread may be changing it; use a {@link #snapshot()} instead.
+	 */
+	public MementoCursor cursor() {
+		return new MementoCursor(this);
+	}
+	
+	/**
+	 * @return an unchangeable copy of the mementos, in date order, that 
+	 * can be shared between threads.
+	 */
+	public MementoSnapshot snapshot() {
+		if (isSorted())
+			return new MementoSnapshot(this);
+		MementoList sorted = (MementoList) clone();
+		sorted.ensureSorted();
+		return new MementoSnapshot(sorted);
 	}
 	
 	public void displayAll() {
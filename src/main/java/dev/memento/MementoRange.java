@@ -0,0 +1,87 @@
+package dev.memento;
+
+/*
+ * #%L
+ * mementoweb-java-client
+ * %%
+ * Copyright (C) 2012 - 2013 The British Library
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.util.ConcurrentModificationException;
+import java.util.List;
+
+/**
+ * The part of a {@link MementoList} between two datetimes, from 
+ * {@link MementoList#range(SimpleDateTime, SimpleDateTime)}.  Nothing is
+ * copied: the range reads through to the list, and like 
+ * {@link List#subList(int, int)} it can't be used once the list has been
+ * changed.
+ */
+public final class MementoRange extends AbstractMementoIndex {
+
+	private final MementoList mList;
+	private final int mFrom;
+	private final int mTo;
+	private final int mModCount;
+
+	MementoRange(MementoList list, int from, int to) {
+		mList = list;
+		mFrom = from;
+		mTo = to;
+		mModCount = list.getModCount();
+	}
+
+	public int size() {
+		checkForChange();
+		return mTo - mFrom;
+	}
+
+	public Memento get(int index) {
+		return mList.get(toListIndex(index));
+	}
+
+	public long getEpochSecond(int index) {
+		return mList.getEpochSecond(toListIndex(index));
+	}
+
+	/**
+	 * @return the index in the list of the first memento in the range.
+	 */
+	public int getFromIndex() {
+		return mFrom;
+	}
+
+	/**
+	 * @return a view of the range as a List.
+	 */
+	public List<Memento> asList() {
+		checkForChange();
+		return mList.subList(mFrom, mTo);
+	}
+
+	private int toListIndex(int index) {
+		checkForChange();
+		if (index < 0 || index >= mTo - mFrom)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + (mTo - mFrom));
+		return mFrom + index;
+	}
+
+	private void checkForChange() {
+		if (mList.getModCount() != mModCount)
+			throw new ConcurrentModificationException();
+	}
+}
@@ -0,0 +1,58 @@
+package dev.memento;
+
+/*
+ * #%L
+ * mementoweb-java-client
+ * %%
+ * Copyright (C) 2012 - 2013 The British Library
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+/**
+ * Receives the Mementos, TimeMaps, TimeBundles and original resources found 
+ * while parsing links, in the order they appear.  This allows Mementos to be 
+ * counted, filtered or stored elsewhere without building a MementoList.
+ * 
+ * @see LinkParser#parse(MementoSink)
+ * @see MementoClient#setMementoSink(MementoSink)
+ */
+public interface MementoSink {
+
+	/**
+	 * Called for each link with a memento rel and a datetime.
+	 * @param memento
+	 */
+	public void onMemento(Memento memento);
+	
+	/**
+	 * Called for each link with rel="timemap".
+	 * @param timeMap
+	 */
+	public void onTimeMap(TimeMap timeMap);
+	
+	/**
+	 * Called for each link with rel="timebundle".
+	 * @param timeBundle
+	 */
+	public void onTimeBundle(TimeBundle timeBundle);
+	
+	/**
+	 * Called for each link with rel="original".
+	 * @param url The URL of the original resource.
+	 */
+	public void onOriginal(String url);
+	
+}
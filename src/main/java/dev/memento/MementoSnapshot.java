@@ -0,0 +1,132 @@
+package dev.memento;
+
+/*
+ * #%L
+ * mementoweb-java-client
+ * %%
+ * Copyright (C) 2012 - 2013 The British Library
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An unchangeable copy of a {@link MementoList}, kept as columns rather
+ * than Memento objects, that any number of threads can read at once without
+ * locking.  Each reader moves through it with its own {@link MementoCursor}.
+ * 
+ * {@link #get(int)} makes a new Memento each time, so changes to it do not
+ * reach the snapshot.
+ */
+public final class MementoSnapshot extends AbstractMementoIndex {
+
+	private final long[] mEpochs;
+	private final int[] mRels;
+	private final short[] mArchiveIds;
+
+	// The URL of memento i is mTemplates[mTemplateIds[i]] expanded with 
+	// mUrlTimestamps[i], or mUrls[i] where mTemplateIds[i] is -1
+	private final UrlTemplate[] mTemplates;
+	private final int[] mTemplateIds;
+	private final long[] mUrlTimestamps;
+	private final String[] mUrls;
+
+	/**
+	 * @param mementos in date order.
+	 */
+	MementoSnapshot(List<Memento> mementos) {
+		int size = mementos.size();
+		mEpochs = new long[size];
+		mRels = new int[size];
+		mArchiveIds = new short[size];
+		mTemplateIds = new int[size];
+		mUrlTimestamps = new long[size];
+		mUrls = new String[size];
+		List<UrlTemplate> templates = new ArrayList<UrlTemplate>();
+		for (int i = 0; i < size; i++) {
+			Memento memento = mementos.get(i);
+			mEpochs[i] = memento.getDateTime().getEpochSecond();
+			mRels[i] = memento.getRels();
+			mArchiveIds[i] = (short) memento.getArchiveId();
+			UrlTemplate template = memento.getUrlTemplate();
+			if (template == null) {
+				mTemplateIds[i] = -1;
+				mUrls[i] = memento.getUrl();
+				continue;
+			}
+			// A list uses only a few templates, see MementoList
+			int id = templates.indexOf(template);
+			if (id < 0) {
+				id = templates.size();
+				templates.add(template);
+			}
+			mTemplateIds[i] = id;
+			mUrlTimestamps[i] = memento.getUrlTimestamp();
+		}
+		mTemplates = templates.toArray(new UrlTemplate[templates.size()]);
+	}
+
+	public int size() {
+		return mEpochs.length;
+	}
+
+	public Memento get(int index) {
+		Memento memento = new Memento();
+		memento.setDateTime(new SimpleDateTime(getEpochSecond(index)));
+		memento.setRels(mRels[index]);
+		memento.setArchiveId(mArchiveIds[index]);
+		if (mTemplateIds[index] < 0)
+			memento.setUrl(mUrls[index]);
+		else
+			memento.setUrl(mTemplates[mTemplateIds[index]], mUrlTimestamps[index]);
+		return memento;
+	}
+
+	public long getEpochSecond(int index) {
+		if (index < 0 || index >= mEpochs.length)
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mEpochs.length);
+		return mEpochs[index];
+	}
+
+	/**
+	 * @param index
+	 * @return the URL of the memento at the given index, without making a
+	 * Memento.
+	 */
+	public String getUrl(int index) {
+		if (mTemplateIds[index] < 0)
+			return mUrls[index];
+		return mTemplates[mTemplateIds[index]].expand(mUrlTimestamps[index]);
+	}
+
+	/**
+	 * @param index
+	 * @return the {@link Rel} bits of the memento at the given index.
+	 */
+	public int getRels(int index) {
+		return mRels[index];
+	}
+
+	/**
+	 * @param index
+	 * @return the archive the memento at the given index came from, see
+	 * {@link Memento#getArchiveId()}.
+	 */
+	public int getArchiveId(int index) {
+		return mArchiveIds[index];
+	}
+}
@@ -0,0 +1,195 @@
+package dev.memento;
+
+/*
+ * #%L
+ * mementoweb-java-client
+ * %%
+ * Copyright (C) 2012 - 2013 The British Library
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Parses a large block of links on several threads.  The text is split
+ * at link boundaries, each chunk is parsed with its own {@link LinkParser} 
+ * in a ForkJoinPool, and the results are then passed to the sink in their 
+ * original order on the calling thread.  The sink therefore sees exactly
+ * what it would have seen from a sequential parse.
+ */
+public class ParallelLinkParser {
+	static Logger log = LogManager.getLogger(ParallelLinkParser.class.getCanonicalName());
+
+	// Below this, splitting costs more than it saves
+	public static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+
+	private final ForkJoinPool mPool;
+	private final int mChunkSize;
+
+	public ParallelLinkParser() {
+		this(ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * @param pool The pool to parse in.
+	 * @param chunkSize The number of characters below which a chunk is 
+	 * parsed without splitting it further.
+	 */
+	public ParallelLinkParser(ForkJoinPool pool, int chunkSize) {
+		mPool = pool;
+		mChunkSize = Math.max(chunkSize, 1);
+	}
+
+	/**
+	 * Parse the links held in buf[offset] to buf[offset + length - 1], 
+	 * passing each one to the sink as {@link LinkParser#parse(MementoSink)}
+	 * would.
+	 * @param buf
+	 * @param offset
+	 * @param length
+	 * @param sink
+	 * @return the number of links parsed.
+	 */
+	public int parse(char[] buf, int offset, int length, MementoSink sink) {
+		List<ChunkResult> chunks = mPool.invoke(new ParseTask(buf, offset, offset + length));
+		log.debug("Parsed " + length + " characters in " + chunks.size() + " chunks");
+
+		int links = 0;
+		for (ChunkResult chunk : chunks) {
+			chunk.replay(sink);
+			links += chunk.links;
+		}
+		return links;
+	}
+
+	/**
+	 * Find the first link boundary at or after from and before end: the 
+	 * start of a link that follows the closing quote and comma of another,
+	 * i.e. '",' then optional white space, then '<...>' followed by ';'.
+	 * @return the index of the '<' or -1 if there is none.
+	 */
+	static int findBoundary(char[] buf, int from, int end) {
+		for (int i = Math.max(from, 1); i < end; i++) {
+			if (buf[i] != ',' || buf[i - 1] != '"')
+				continue;
+
+			int j = i + 1;
+			while (j < end && isWhitespace(buf[j]))
+				j++;
+			if (j == end || buf[j] != '<')
+				continue;
+			int start = j;
+
+			while (j < end && buf[j] != '>' && buf[j] != '<' && buf[j] != '"' && !isWhitespace(buf[j]))
+				j++;
+			if (j < end && buf[j] == '>') {
+				j++;
+				while (j < end && isWhitespace(buf[j]))
+					j++;
+				if (j < end && buf[j] == ';')
+					return start;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+	}
+
+	private class ParseTask extends RecursiveTask<List<ChunkResult>> {
+		private static final long serialVersionUID = 1L;
+
+		private final char[] buf;
+		private final int start;
+		private final int end;
+
+		ParseTask(char[] buf, int start, int end) {
+			this.buf = buf;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected List<ChunkResult> compute() {
+			if (end - start > mChunkSize) {
+				int split = findBoundary(buf, start + (end - start) / 2, end);
+				if (split > start) {
+					ParseTask left = new ParseTask(buf, start, split);
+					left.fork();
+					List<ChunkResult> right = new ParseTask(buf, split, end).compute();
+					List<ChunkResult> results = left.join();
+					results.addAll(right);
+					return results;
+				}
+			}
+
+			ChunkResult chunk = new ChunkResult();
+			chunk.links = new LinkParser(buf, start, end - start).parse(chunk);
+			List<ChunkResult> results = new ArrayList<ChunkResult>();
+			results.add(chunk);
+			return results;
+		}
+	}
+
+	/**
+	 * Holds the objects parsed from one chunk until they can be passed on
+	 * in order.
+	 */
+	private static class ChunkResult implements MementoSink {
+		private final ArrayList<Object> items = new ArrayList<Object>();
+		private int links;
+
+		@Override
+		public void onMemento(Memento memento) {
+			items.add(memento);
+		}
+
+		@Override
+		public void onTimeMap(TimeMap timeMap) {
+			items.add(timeMap);
+		}
+
+		@Override
+		public void onTimeBundle(TimeBundle timeBundle) {
+			items.add(timeBundle);
+		}
+
+		@Override
+		public void onOriginal(String url) {
+			items.add(url);
+		}
+
+		void replay(MementoSink sink) {
+			for (Object item : items) {
+				if (item instanceof Memento)
+					sink.onMemento((Memento) item);
+				else if (item instanceof TimeMap)
+					sink.onTimeMap((TimeMap) item);
+				else if (item instanceof TimeBundle)
+					sink.onTimeBundle((TimeBundle) item);
+				else
+					sink.onOriginal((String) item);
+			}
+		}
+	}
+}
@@ -0,0 +1,185 @@
+package dev.memento;
+
+/*
+ * #%L
+ * mementoweb-java-client
+ * %%
+ * Copyright (C) 2012 - 2013 The British Library
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+/**
+ * The link relation types used by Memento, as bits of an int so that a
+ * link's rel can be parsed once and kept without a String.
+ *
+ * Rels are space-separated and case-insensitive, e.g. rel="first memento".
+ * The hyphenated forms from earlier drafts of the Memento protocol, e.g.
+ * rel="first-memento prev-memento", are also understood.
+ */
+public final class Rel {
+
+	public static final int MEMENTO    = 1;
+	public static final int FIRST      = 1 << 1;
+	public static final int LAST       = 1 << 2;
+	public static final int PREV       = 1 << 3;
+	public static final int NEXT       = 1 << 4;
+	public static final int TIMEMAP    = 1 << 5;
+	public static final int TIMEGATE   = 1 << 6;
+	public static final int ORIGINAL   = 1 << 7;
+	public static final int SELF       = 1 << 8;
+	public static final int TIMEBUNDLE = 1 << 9;
+
+	// Indexed by bit number
+	private static final String[] NAMES = { "memento", "first", "last", "prev", "next",
+		"timemap", "timegate", "original", "self", "timebundle" };
+
+	// Which rel a link is treated as when it has several, most important first
+	private static final int[] PRECEDENCE = { TIMEBUNDLE, TIMEMAP, TIMEGATE, ORIGINAL, SELF, MEMENTO };
+
+	private static final int MEMENTO_BITS = MEMENTO | FIRST | LAST | PREV | NEXT;
+
+	// The rel text for every combination of the memento bits, so that
+	// Memento.getRel() need not build a String each time
+	private static final String[] MEMENTO_NAMES = new String[MEMENTO_BITS + 1];
+
+	private static final String HYPHENATED_SUFFIX = "-memento";
+
+	static {
+		for (int rels = 0; rels <= MEMENTO_BITS; rels++) {
+			if ((rels & MEMENTO) == 0)
+				continue;
+			StringBuilder name = new StringBuilder();
+			for (int bit = 1; bit < 5; bit++) {
+				if ((rels & (1 << bit)) != 0)
+					name.append(NAMES[bit]).append(' ');
+			}
+			MEMENTO_NAMES[rels] = name.append(NAMES[0]).toString();
+		}
+	}
+
+	private Rel() {
+	}
+
+	/**
+	 * @param rel the value of a rel parameter, e.g. "first memento".
+	 * @return the bits for the rels that are recognised, 0 if there are none.
+	 */
+	public static int parse(String rel) {
+		if (rel == null)
+			return 0;
+		return parse(rel.toCharArray(), 0, rel.length());
+	}
+
+	/**
+	 * Parse the rels in buf[start] to buf[end - 1].
+	 */
+	static int parse(char[] buf, int start, int end) {
+		int rels = 0;
+		int i = start;
+		while (i < end) {
+			while (i < end && isSpace(buf[i]))
+				i++;
+			int tokenStart = i;
+			while (i < end && !isSpace(buf[i]))
+				i++;
+			rels |= parseToken(buf, tokenStart, i);
+		}
+		return rels;
+	}
+
+	/**
+	 * Parse the rels in buf[start] to buf[end - 1], which is taken to be
+	 * in an ASCII-compatible charset.
+	 */
+	static int parse(byte[] buf, int start, int end) {
+		char[] token = null;
+		int rels = 0;
+		int i = start;
+		while (i < end) {
+			while (i < end && isSpace(buf[i]))
+				i++;
+			int tokenStart = i;
+			while (i < end && !isSpace(buf[i]))
+				i++;
+			int length = i - tokenStart;
+			if (length == 0)
+				continue;
+			if (token == null || token.length < length)
+				token = new char[Math.max(length, 16)];
+			for (int j = 0; j < length; j++)
+				token[j] = (char) (buf[tokenStart + j] & 0xff);
+			rels |= parseToken(token, 0, length);
+		}
+		return rels;
+	}
+
+	private static int parseToken(char[] buf, int start, int end) {
+		int rels = 0;
+		int length = end - start;
+		if (length > HYPHENATED_SUFFIX.length()
+				&& regionMatches(buf, end - HYPHENATED_SUFFIX.length(), HYPHENATED_SUFFIX)) {
+			rels = MEMENTO;
+			length -= HYPHENATED_SUFFIX.length();
+		}
+		for (int bit = 0; bit < NAMES.length; bit++) {
+			if (NAMES[bit].length() == length && regionMatches(buf, start, NAMES[bit]))
+				return rels | (1 << bit);
+		}
+		return rels;
+	}
+
+	private static boolean isSpace(int c) {
+		return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+	}
+
+	private static boolean regionMatches(char[] buf, int start, String s) {
+		for (int i = 0; i < s.length(); i++) {
+			if (Character.toLowerCase(buf[start + i]) != s.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * A link may have several rels, e.g. "timemap self".  Like the rest of
+	 * the client, treat it as the most important of them.
+	 * @param rels
+	 * @return one of TIMEBUNDLE, TIMEMAP, TIMEGATE, ORIGINAL, SELF or MEMENTO,
+	 * or 0 if none of them are set.
+	 */
+	public static int primary(int rels) {
+		for (int rel : PRECEDENCE) {
+			if ((rels & rel) != 0)
+				return rel;
+		}
+		return 0;
+	}
+
+	/**
+	 * @param rels
+	 * @return the name of the primary rel, with first, last, prev and next
+	 * in front for mementos, e.g. "first last memento".  Null if there is
+	 * no primary rel.
+	 */
+	public static String toString(int rels) {
+		int primary = primary(rels);
+		if (primary == 0)
+			return null;
+		if (primary == MEMENTO)
+			return MEMENTO_NAMES[rels & MEMENTO_BITS];
+		return NAMES[Integer.numberOfTrailingZeros(primary)];
+	}
+}
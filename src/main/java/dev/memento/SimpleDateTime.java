@@ -16,7 +16,7 @@
  *  limitations under the License.
  *
  *  
- *  This implements a simple date/time class.
+ *  This implements a simple, immutable date/time class.
  */
 
 package dev.memento;
@@ -50,36 +50,49 @@ import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.Locale;
-import java.util.SimpleTimeZone;
 import java.util.TimeZone;
 
+/**
+ * A date and time to the second, held as the number of seconds since the
+ * epoch.  Instances are immutable, so they can be shared, used as keys, and
+ * compared without any formatting.  The year, month and day (in GMT) are 
+ * worked out the first time they are asked for.
+ */
 public class SimpleDateTime implements Comparable<SimpleDateTime>, Serializable {
 	
-	private static final long serialVersionUID = 1L;
+	private static final long serialVersionUID = 2L;
 	
 	// Sun, 06 Nov 1994 08:49:37 GMT
 	public final static String PATTERN_RFC1123 = "EEE, dd MMM yyyy HH:mm:ss zzz";
 	
 	public final static String PATTERN_AMERICAN_SHORT = "MM-dd-yyyy";
 	
-	public final TimeZone GMT = TimeZone.getTimeZone("GMT");
+	private final static String DAY_NAMES = "SunMonTueWedThuFriSat";
+	
+	private final static String MONTH_NAMES = "JanFebMarAprMayJunJulAugSepOctNovDec";
+	
+	private final static long SECONDS_PER_DAY = 24 * 60 * 60;
 	
-	private int mDay;
-	private int mMonth;
-	private int mYear;
-	private Date mDate;
+	public final static TimeZone GMT = TimeZone.getTimeZone("GMT");
+	
+	private final long mEpochSecond;
+	
+	// Year, month and day packed as (year << 9 | month << 5 | day), or 0 if
+	// not worked out yet.  A single int so that racing threads can only ever
+	// see either 0 or the complete value.
+	private transient int mCivil;
 	
 	// There should be only one format that all use
 	public static DateFormat mDateFormat = null;
 	public static DateFormat mTimeFormat = null;
 	
+	private static volatile MonthNames mMonthNames;
+	
+	/**
+	 * Set to the current date/time.
+	 */
 	public SimpleDateTime() {
-		mDate = new Date();
-		
-		Calendar c = Calendar.getInstance();
-		mYear = c.get(Calendar.YEAR);
-		mMonth = c.get(Calendar.MONTH) + 1;
-		mDay = c.get(Calendar.DAY_OF_MONTH);
+		this(floorDiv(System.currentTimeMillis(), 1000));
 	}
 	
 	/**
@@ -93,33 +106,50 @@ public class SimpleDateTime implements Comparable<SimpleDateTime>, Serializable
 	}
 	
 	public SimpleDateTime(SimpleDateTime date) {
-		mDate = (Date) date.mDate.clone();
-		mDay = date.mDay;
-		mMonth = date.mMonth;
-		mYear = date.mYear;
+		mEpochSecond = date.mEpochSecond;
+		mCivil = date.mCivil;
+	}
+	
+	/**
+	 * Create a SimpleDateTime for the given number of seconds since
+	 * 1 Jan 1970 00:00:00 GMT.
+	 * @param epochSecond
+	 */
+	public SimpleDateTime(long epochSecond) {
+		mEpochSecond = epochSecond;
 	}
 	
 	/**
 	 * Create a new SimpleDateTime based on the given date in RFC 1123 format. 
 	 * Example: Sat, 22 Dec 2007 09:05:17 GMT
 	 * @param date
+	 * @throws IllegalArgumentException if the date cannot be parsed.
 	 */
 	public SimpleDateTime(String date) {
-		setDateRfc1123(date);		
+		this(parseRfc1123(date));
 	}
 	
-	//public SimpleDateTime(String date) {
-	//	setDateRfc1123(date);
-	//}
+	/**
+	 * Create a new SimpleDateTime from the RFC 1123 date held in 
+	 * buf[offset] to buf[offset + length - 1], without copying it out 
+	 * to a String unless it needs the lenient parser.
+	 * @param buf
+	 * @param offset
+	 * @param length
+	 * @throws IllegalArgumentException if the date cannot be parsed.
+	 */
+	SimpleDateTime(char[] buf, int offset, int length) {
+		this(parseRfc1123(buf, offset, length));
+	}
 	
 	/**
-	 * Create a SimpleDateTime with given parameters.
+	 * Create a SimpleDateTime at midnight GMT on the given date.
 	 * @param day Between 1 and 31
 	 * @param month Between 1 and 12
 	 * @param year Any value
 	 */
 	public SimpleDateTime(int day, int month, int year) {		
-		setDate(day, month, year);		
+		this(daysFromCivil(year, month, day) * SECONDS_PER_DAY);
 	}
 	
 	public void setDateFormat(DateFormat dateFormat) {
@@ -130,19 +160,6 @@ public class SimpleDateTime implements Comparable<SimpleDateTime>, Serializable
 		mTimeFormat = timeFormat;
 	}
 	
-	private void setDate(int day, int month, int year) {
-		SimpleDateFormat sdf = new SimpleDateFormat(PATTERN_AMERICAN_SHORT); 
-		try {
-			mDate = sdf.parse(month + "-" + day + "-" + year);
-		} catch (ParseException e) {
-			e.printStackTrace();
-		}
-
-		mDay = day;
-		mMonth = month;
-		mYear = year;
-	}
-	
 	public static SimpleDateTime clone(SimpleDateTime date) {
 		return new SimpleDateTime(date);		 
 	}
@@ -173,59 +190,135 @@ public class SimpleDateTime implements Comparable<SimpleDateTime>, Serializable
 		return null;		
 	}
 	
-	public int getDay() {
-		return mDay;
+	/**
+	 * @return the number of seconds since 1 Jan 1970 00:00:00 GMT.
+	 */
+	public long getEpochSecond() {
+		return mEpochSecond;
 	}
-
-	public void setDay(int day) {
-		setDate(day, mMonth, mYear);
+	
+	public int getDay() {
+		return civil() & 31;
 	}
 
 	public int getMonth() {
-		return mMonth;
+		return (civil() >> 5) & 15;
 	}
 	
 	public String getMonthName() {
-		return new DateFormatSymbols().getMonths()[mMonth-1];
+		return getMonthNames()[getMonth()-1];
 	}
-
-	public void setMonth(int month) {
-		setDate(mDay, month, mYear);
+	
+	/**
+	 * @return the names of the months in the default locale, January first.
+	 * Cached, and looked up again only if the default locale changes.
+	 */
+	static String[] getMonthNames() {
+		MonthNames names = mMonthNames;
+		Locale locale = Locale.getDefault();
+		if (names == null || !names.locale.equals(locale)) {
+			names = new MonthNames(locale, new DateFormatSymbols(locale).getMonths());
+			mMonthNames = names;
+		}
+		return names.names;
 	}
-
-	public int getYear() {
-		return mYear;
+	
+	private static final class MonthNames {
+		final Locale locale;
+		final String[] names;
+		
+		MonthNames(Locale locale, String[] names) {
+			this.locale = locale;
+			this.names = names;
+		}
 	}
 
-	public void setYear(int year) {
-		setDate(mDay, mMonth, year);
+	public int getYear() {
+		return civil() >> 9;
 	}
 	
+	/**
+	 * @return a new Date for this date/time.
+	 */
 	public Date getDate() {
-		return mDate;
+		return new Date(mEpochSecond * 1000L);
+	}
+	
+	private int civil() {
+		int civil = mCivil;
+		if (civil == 0) {
+			civil = civilFromDays(floorDiv(mEpochSecond, SECONDS_PER_DAY));
+			mCivil = civil;
+		}
+		return civil;
 	}
+	
+	/**
+	 * Parse a date in RFC 1123 format. 
+	 * Example: Sat, 22 Dec 2007 09:05:17 GMT
+	 * @param date
+	 * @return the number of seconds since the epoch.
+	 * @throws IllegalArgumentException if the date cannot be parsed.
+	 */
+	public static long parseRfc1123(String date) {
+		char[] chars = date.toCharArray();
+		return parseRfc1123(chars, 0, chars.length);
+	}
+	
+	static long parseRfc1123(char[] buf, int offset, int length) {
+		// Allow for surrounding white space
+		while (length > 0 && buf[offset] == ' ') {
+			offset++;
+			length--;
+		}
+		while (length > 0 && buf[offset + length - 1] == ' ')
+			length--;
+		
+		long seconds = parseRfc1123Fixed(buf, offset, length);
+		if (seconds == Long.MIN_VALUE)
+			seconds = parseRfc1123Lenient(new String(buf, offset, length));
+		return seconds;
+	}
+	
+	/**
+	 * Parse the fixed layout "EEE, dd MMM yyyy HH:mm:ss GMT" straight from the
+	 * characters, using plain epoch arithmetic.  UTC is accepted in place of GMT.
+	 * @return the number of seconds since the epoch, or Long.MIN_VALUE if 
+	 * the input does not have this layout.
+	 */
+	private static long parseRfc1123Fixed(char[] buf, int offset, int length) {
+		if (length != 29 || buf[offset + 3] != ',' || buf[offset + 4] != ' ' || 
+				buf[offset + 7] != ' ' || buf[offset + 11] != ' ' || buf[offset + 16] != ' ' || 
+				buf[offset + 19] != ':' || buf[offset + 22] != ':' || buf[offset + 25] != ' ')
+			return Long.MIN_VALUE;
+		
+		int zone = offset + 26;
+		if (!((buf[zone] == 'G' && buf[zone + 1] == 'M' && buf[zone + 2] == 'T') ||
+				(buf[zone] == 'U' && buf[zone + 1] == 'T' && buf[zone + 2] == 'C')))
+			return Long.MIN_VALUE;
+		
+		int day = digits(buf, offset + 5, 2);
+		int month = monthFromName(buf, offset + 8);
+		int year = digits(buf, offset + 12, 4);
+		int hour = digits(buf, offset + 17, 2);
+		int minute = digits(buf, offset + 20, 2);
+		int second = digits(buf, offset + 23, 2);
+		if (day < 1 || month < 1 || year < 0 || hour < 0 || hour > 23 || 
+				minute < 0 || minute > 59 || second < 0 || second > 60 ||
+				day > daysInMonth(month, year))
+			return Long.MIN_VALUE;
 		
+		return daysFromCivil(year, month, day) * SECONDS_PER_DAY + 
+				hour * 3600 + minute * 60 + second;
+	}
 	
-	// Incoming date is in RFC 1123 format. 
-	// Example: Sat, 22 Dec 2007 09:05:17 GMT
-	public void setDateRfc1123(String date) {
+	private static long parseRfc1123Lenient(String date) {
 		SimpleDateFormat formatter = new SimpleDateFormat(PATTERN_RFC1123, Locale.US);
-        //formatter.setTimeZone(GMT);            
-        try {
-        	//if (Log.LOG) Log.d(LOG_TAG, "date is [" + date + "]");
-        	mDate = formatter.parse(date);				
-			
-			Calendar cal = Calendar.getInstance();
-			cal.setTime(mDate);
-			mDay = cal.get(Calendar.DATE);
-			mMonth = cal.get(Calendar.MONTH) + 1;
-			mYear = cal.get(Calendar.YEAR);
-			
-			//if (Log.LOG) Log.d(LOG_TAG, "date is " + toString());
-			
+		try {
+			return floorDiv(formatter.parse(date).getTime(), 1000);
 		} catch (ParseException e) {
-			e.printStackTrace();
-		}            
+			throw new IllegalArgumentException("Unable to parse date [" + date + "]", e);
+		}
 	}
 	
 	/**
@@ -233,19 +326,12 @@ public class SimpleDateTime implements Comparable<SimpleDateTime>, Serializable
 	 * @return
 	 */
 	public CharSequence dateFormatted() {    	
-    	//return new StringBuilder()
-        //       .append(mMonth).append("-").append(mDay).append("-").append(mYear);
-		
 		if (mDateFormat == null) {
-			//System.out.println("!! mDateFormat is null - using default format !!");
-			
 			// Use default format
 			mDateFormat = DateFormat.getInstance();
 		}
 		
-		//if (Log.LOG) Log.d(LOG_TAG, "*** " + this.mYear + "-" + this.mMonth + "-" + this.mDay);
-		
-		return mDateFormat.format(mDate);
+		return mDateFormat.format(getDate());
     } 
 	
 	public CharSequence dateAndTimeFormatted() {
@@ -253,62 +339,162 @@ public class SimpleDateTime implements Comparable<SimpleDateTime>, Serializable
 		if (mTimeFormat == null)
 			mTimeFormat = DateFormat.getDateInstance();
 		
-		return dateFormatted() + " " + mTimeFormat.format(mDate);
+		return dateFormatted() + " " + mTimeFormat.format(getDate());
 	}
 	
+	/**
+	 * Return the date in RFC 1123 format, always in GMT.
+	 * Example: Sat, 22 Dec 2007 09:05:17 GMT
+	 * @return
+	 */
 	public String longDateFormatted() {
-		 
-		SimpleDateFormat formatter = new SimpleDateFormat(PATTERN_RFC1123);
+		return formatRfc1123(mEpochSecond);
+	}
+	
+	/*
+	 * Fixed layout formatter for PATTERN_RFC1123 in GMT.
+	 */
+	private static String formatRfc1123(long seconds) {
+		long days = floorDiv(seconds, SECONDS_PER_DAY);
+		int secondOfDay = (int) (seconds - days * SECONDS_PER_DAY);
 		
-		java.util.Calendar cal = Calendar.
-		getInstance(new SimpleTimeZone(0, "GMT"));
-		formatter.setCalendar(cal);
-		       //java.util.Date date = format.parse("2003-01-25 00:15:30");
-		        
-		String date = formatter.format(mDate);
+		int civil = civilFromDays(days);
+		int year = civil >> 9;
+		if (year < 0 || year > 9999)
+			return formatRfc1123Lenient(seconds);
+		int month = (civil >> 5) & 15;
+		int day = civil & 31;
 		
-		// Remove ugly ending
-		if (date.endsWith("+00:00"))
-			date = date.replace("+00:00", "");
+		// 1 Jan 1970 was a Thursday
+		int dow = (int) ((days % 7 + 11) % 7);
 		
-		return date;
+		char[] out = new char[29];
+		DAY_NAMES.getChars(dow * 3, dow * 3 + 3, out, 0);
+		out[3] = ',';
+		out[4] = ' ';
+		putDigits(out, 5, day, 2);
+		out[7] = ' ';
+		MONTH_NAMES.getChars((month - 1) * 3, month * 3, out, 8);
+		out[11] = ' ';
+		putDigits(out, 12, year, 4);
+		out[16] = ' ';
+		putDigits(out, 17, secondOfDay / 3600, 2);
+		out[19] = ':';
+		putDigits(out, 20, secondOfDay / 60 % 60, 2);
+		out[22] = ':';
+		putDigits(out, 23, secondOfDay % 60, 2);
+		out[25] = ' ';
+		out[26] = 'G';
+		out[27] = 'M';
+		out[28] = 'T';
+		return new String(out);
+	}
+	
+	private static String formatRfc1123Lenient(long seconds) {
+		SimpleDateFormat formatter = new SimpleDateFormat(PATTERN_RFC1123, Locale.US);
+		formatter.setTimeZone(GMT);
+		return formatter.format(new Date(seconds * 1000L));
+	}
+	
+	private static void putDigits(char[] out, int offset, int value, int width) {
+		for (int i = offset + width - 1; i >= offset; i--) {
+			out[i] = (char) ('0' + value % 10);
+			value /= 10;
+		}
 	}
 	
 	/**
-	 * Change the hour of this SimpleDateTime to 23:59.
+	 * @return the value of the given number of decimal digits, or -1 if any
+	 * of them is not a digit.
 	 */
-	public void setToLastHour() {
-		Calendar cal = Calendar.getInstance();
-		cal.setTime(mDate);
-		cal.set(Calendar.HOUR_OF_DAY, 23);
-		cal.set(Calendar.MINUTE, 59);
-		mDate = cal.getTime();
+	private static int digits(char[] buf, int offset, int width) {
+		int value = 0;
+		for (int i = offset; i < offset + width; i++) {
+			int d = buf[i] - '0';
+			if (d < 0 || d > 9)
+				return -1;
+			value = value * 10 + d;
+		}
+		return value;
 	}
 	
-	@Override
-	public String toString() {
-		return mYear + "-" + mMonth + "-" + mDay;
-	}
-
 	/**
-	 * Compare only the date, not the hour, minutes, and seconds.
+	 * @return 1 to 12 for the three letter English month name, or -1.
+	 */
+	private static int monthFromName(char[] buf, int offset) {
+		for (int m = 0; m < 12; m++) {
+			int i = m * 3;
+			if (MONTH_NAMES.charAt(i) == buf[offset] && 
+					MONTH_NAMES.charAt(i + 1) == Character.toLowerCase(buf[offset + 1]) &&
+					MONTH_NAMES.charAt(i + 2) == Character.toLowerCase(buf[offset + 2]))
+				return m + 1;
+		}
+		return -1;
+	}
+	
+	private static int daysInMonth(int month, int year) {
+		if (month == 2)
+			return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+		else if (month == 4 || month == 6 || month == 9 || month == 11)
+			return 30;
+		else
+			return 31;
+	}
+	
+	/*
+	 * Days since 1 Jan 1970 for the given proleptic Gregorian date.
 	 */
+	static long daysFromCivil(int year, int month, int day) {
+		long y = month <= 2 ? year - 1 : year;
+		long era = (y >= 0 ? y : y - 399) / 400;
+		int yoe = (int) (y - era * 400);
+		int doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+		int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+		return era * 146097 + doe - 719468;
+	}
+	
 	/*
+	 * Proleptic Gregorian date for the given days since 1 Jan 1970, packed 
+	 * as (year << 9 | month << 5 | day).
+	 */
+	static int civilFromDays(long days) {
+		long z = days + 719468;
+		long era = (z >= 0 ? z : z - 146096) / 146097;
+		int doe = (int) (z - era * 146097);
+		int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+		int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+		int mp = (5 * doy + 2) / 153;
+		int day = doy - (153 * mp + 2) / 5 + 1;
+		int month = mp < 10 ? mp + 3 : mp - 9;
+		int year = (int) (yoe + era * 400) + (month <= 2 ? 1 : 0);
+		return year << 9 | month << 5 | day;
+	}
+	
+	static long floorDiv(long x, long y) {
+		long q = x / y;
+		if ((x % y != 0) && ((x ^ y) < 0))
+			q--;
+		return q;
+	}
+	
+	/**
+	 * Return a new SimpleDateTime on the same day as this one, with the 
+	 * time changed to 23:59 (GMT).
+	 */
+	public SimpleDateTime toLastHour() {
+		long day = floorDiv(mEpochSecond, SECONDS_PER_DAY);
+		long second = mEpochSecond - day * SECONDS_PER_DAY;
+		return new SimpleDateTime(day * SECONDS_PER_DAY + 23 * 3600 + 59 * 60 + second % 60);
+	}
+	
 	@Override
-	public int compareTo(SimpleDateTime date) {
-		// Compare with our equalsDate() which only compares dates, not times
-		if (date.equalsDate(this))
-			return 0;
-		else {
-			// Since the dates aren't the same, we can use the regular compareTo()
-			// which does compare time info
-			return mDate.compareTo(date.mDate);
-		}
-	}*/
+	public String toString() {
+		return getYear() + "-" + getMonth() + "-" + getDay();
+	}
 	
 	@Override
 	public int compareTo(SimpleDateTime date) {
-		return mDate.compareTo(date.mDate);		
+		return mEpochSecond < date.mEpochSecond ? -1 : (mEpochSecond == date.mEpochSecond ? 0 : 1);
 	}
 	
 	/**
@@ -319,14 +505,9 @@ public class SimpleDateTime implements Comparable<SimpleDateTime>, Serializable
 	 * 0 if they are equal, and an int > 0 if this date is greater
 	 */
 	public int compareDateTo(SimpleDateTime date) {
-		// Compare with our equalsDate() which only compares dates, not times
-		if (date.equalsDate(this))
-			return 0;
-		else {
-			// Since the dates aren't the same, we can use the regular compareTo()
-			// which does compare time info
-			return mDate.compareTo(date.mDate);
-		}
+		long day = floorDiv(mEpochSecond, SECONDS_PER_DAY);
+		long otherDay = floorDiv(date.mEpochSecond, SECONDS_PER_DAY);
+		return day < otherDay ? -1 : (day == otherDay ? 0 : 1);
 	}
 	
 	/**
@@ -334,23 +515,22 @@ public class SimpleDateTime implements Comparable<SimpleDateTime>, Serializable
 	 */
 	@Override
 	public boolean equals(Object o) {		
-		if (o instanceof SimpleDateTime) {
-			SimpleDateTime d = (SimpleDateTime)o;
-						
-			// Compare entire thing
-			if (d.longDateFormatted().equals(this.longDateFormatted()))
-				return true;
-			else
-				return false;
-		}
-		else
-			return super.equals(o);
+		if (this == o)
+			return true;
+		if (o instanceof SimpleDateTime)
+			return mEpochSecond == ((SimpleDateTime) o).mEpochSecond;
+		return false;
+	}
+	
+	@Override
+	public int hashCode() {
+		return (int) (mEpochSecond ^ (mEpochSecond >>> 32));
 	}
 	
 	/**
 	 * Return true if the dates are the same (ignore hours, minutes, seconds).
 	 */
 	public boolean equalsDate(SimpleDateTime d) {
-		return (d.getDay() == mDay && d.getMonth() == mMonth && d.getYear() == mYear);
+		return compareDateTo(d) == 0;
 	}
 }
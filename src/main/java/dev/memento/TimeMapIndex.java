@@ -0,0 +1,393 @@
+package dev.memento;
+
+/*
+ * #%L
+ * mementoweb-java-client
+ * %%
+ * Copyright (C) 2012 - 2013 The British Library
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Index over the raw bytes of a TimeMap in link-format.
+ *
+ * Rather than creating a Link, Strings and a Memento for every entry, the
+ * bytes are scanned once and only the position of each memento's URL, its
+ * {@link Rel} bits and its datetime (as epoch seconds) are recorded.  The 
+ * Mementos returned by {@link #get(int)} and {@link #asList()} are views onto
+ * the index that decode their URL from the bytes when asked for it.
+ *
+ * The bytes are not copied, so must not be changed while the index is in use.
+ * The structure of link-format is plain ASCII, so any ASCII-compatible
+ * charset (UTF-8, ISO-8859-1) may be used for the URLs.
+ *
+ * Usage:
+ *
+ *   TimeMapIndex index = TimeMapIndex.parse(bytes, 0, bytes.length);
+ *   for (int i = 0; i < index.size(); i++) {
+ *       if (index.getEpochSecond(i) > since)
+ *           use(index.getUrl(i));
+ *   }
+ */
+public class TimeMapIndex extends LinkScanner {
+	static Logger log = LogManager.getLogger(TimeMapIndex.class.getCanonicalName());
+
+	private static final Charset DEFAULT_CHARSET = Charset.forName("ISO-8859-1");
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	// RFC 1123 dates are 29 characters, but leave room for padding and the
+	// lenient formats
+	private static final int MAX_DATE_LENGTH = 64;
+
+	private final byte[] mBuf;
+	private final Charset mCharset;
+
+	// One entry per memento, in the order they appear in the TimeMap
+	private int mSize;
+	private int[] mUrlStart = new int[INITIAL_CAPACITY];
+	private int[] mUrlLength = new int[INITIAL_CAPACITY];
+	private int[] mRels = new int[INITIAL_CAPACITY];
+	private long[] mEpochSecond = new long[INITIAL_CAPACITY];
+
+	// The few other links are kept as they are
+	private String mOriginal;
+	private TimeBundle mTimeBundle;
+	private List<TimeMap> mTimeMaps = new ArrayList<TimeMap>();
+
+	// Scratch state used while parsing
+	private char[] mDateChars = new char[MAX_DATE_LENGTH];
+
+	// The link being parsed
+	private int mLinkUrlStart;
+	private int mLinkUrlEnd;
+	private int mLinkRels;
+	private boolean mLinkHasRel;
+	private int mLinkTypeStart;
+	private int mLinkTypeEnd;
+	private long mLinkEpochSecond;
+	private boolean mLinkHasDatetime;
+
+	private TimeMapIndex(byte[] buf, Charset charset) {
+		mBuf = buf;
+		mCharset = charset;
+	}
+
+	/**
+	 * Index the TimeMap held in buf[offset] to buf[offset + length - 1],
+	 * decoding URLs as ISO-8859-1, the default for HTTP.
+	 * @param buf
+	 * @param offset
+	 * @param length
+	 * @return
+	 */
+	public static TimeMapIndex parse(byte[] buf, int offset, int length) {
+		return parse(buf, offset, length, DEFAULT_CHARSET);
+	}
+
+	/**
+	 * Index the TimeMap held in buf[offset] to buf[offset + length - 1].
+	 * The array is not copied.
+	 * @param buf
+	 * @param offset
+	 * @param length
+	 * @param charset used to decode URLs.
+	 * @return
+	 */
+	public static TimeMapIndex parse(byte[] buf, int offset, int length, Charset charset) {
+		TimeMapIndex index = new TimeMapIndex(buf, charset);
+		index.parse(offset, offset + length);
+		return index;
+	}
+
+	/**
+	 * Index the TimeMap between the buffer's position and limit.  The
+	 * buffer's position is not changed.  If the buffer is not backed by an
+	 * accessible array (e.g. a direct buffer) its contents are copied.
+	 * @param buffer
+	 * @param charset used to decode URLs.
+	 * @return
+	 */
+	public static TimeMapIndex parse(ByteBuffer buffer, Charset charset) {
+		if (buffer.hasArray()) {
+			return parse(buffer.array(), buffer.arrayOffset() + buffer.position(),
+					buffer.remaining(), charset);
+		}
+		byte[] copy = new byte[buffer.remaining()];
+		buffer.duplicate().get(copy);
+		return parse(copy, 0, copy.length, charset);
+	}
+
+	/**
+	 * @return the number of mementos in the TimeMap.
+	 */
+	public int size() {
+		return mSize;
+	}
+
+	public long getEpochSecond(int i) {
+		checkIndex(i);
+		return mEpochSecond[i];
+	}
+
+	public SimpleDateTime getDateTime(int i) {
+		return new SimpleDateTime(getEpochSecond(i));
+	}
+
+	/**
+	 * Decode the URL of the i'th memento.  A new String is made each time.
+	 * @param i
+	 * @return
+	 */
+	public String getUrl(int i) {
+		checkIndex(i);
+		return new String(mBuf, mUrlStart[i], mUrlLength[i], mCharset);
+	}
+
+	/**
+	 * @param i
+	 * @return the {@link Rel} bits of the i'th memento.
+	 */
+	public int getRels(int i) {
+		checkIndex(i);
+		return mRels[i];
+	}
+
+	public String getRel(int i) {
+		return Rel.toString(getRels(i));
+	}
+
+	/**
+	 * @param i
+	 * @return a view of the i'th memento.
+	 */
+	public Memento get(int i) {
+		checkIndex(i);
+		return new MementoView(this, i);
+	}
+
+	/**
+	 * @return the mementos as a List of views.  The List is unmodifiable and
+	 * a view is created each time an element is got.
+	 */
+	public List<Memento> asList() {
+		return new AbstractList<Memento>() {
+			@Override
+			public Memento get(int i) {
+				return TimeMapIndex.this.get(i);
+			}
+
+			@Override
+			public int size() {
+				return mSize;
+			}
+		};
+	}
+
+	/**
+	 * @return the URL of the original resource, or null if it was not given.
+	 */
+	public String getOriginal() {
+		return mOriginal;
+	}
+
+	public TimeBundle getTimeBundle() {
+		return mTimeBundle;
+	}
+
+	/**
+	 * @return the TimeMaps linked to, e.g. the other pages of a paged TimeMap.
+	 */
+	public List<TimeMap> getTimeMaps() {
+		return mTimeMaps;
+	}
+
+	private void checkIndex(int i) {
+		if (i < 0 || i >= mSize)
+			throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + mSize);
+	}
+
+	private void parse(int start, int end) {
+		mPos = start;
+		mEnd = end;
+		mMark = start;
+		while (skipSeparators())
+			parseLink();
+		mDateChars = null;
+	}
+
+	private void parseLink() {
+		mLinkRels = 0;
+		mLinkHasRel = false;
+		mLinkTypeStart = -1;
+		mLinkHasDatetime = false;
+		if (!scanLink())
+			return;
+
+		switch (Rel.primary(mLinkRels)) {
+		case 0:
+			if (!mLinkHasRel)
+				log.error("Missing rel in: [" + excerpt() + "]");
+			break;
+		case Rel.TIMEBUNDLE:
+			mTimeBundle = new TimeBundle(link(mLinkUrlStart, mLinkUrlEnd, mLinkRels, null));
+			break;
+		case Rel.TIMEMAP:
+			String type = mLinkTypeStart < 0 ? null : decode(mLinkTypeStart, mLinkTypeEnd);
+			mTimeMaps.add(new TimeMap(link(mLinkUrlStart, mLinkUrlEnd, mLinkRels, type)));
+			break;
+		case Rel.ORIGINAL:
+			mOriginal = decode(mLinkUrlStart, mLinkUrlEnd);
+			break;
+		case Rel.MEMENTO:
+			if (mLinkHasDatetime)
+				add(mLinkUrlStart, mLinkUrlEnd, mLinkRels, mLinkEpochSecond);
+			else
+				log.error("Missing datetime for memento in: [" + excerpt() + "]");
+			break;
+		}
+	}
+
+	@Override
+	boolean more() {
+		return mPos < mEnd;
+	}
+
+	@Override
+	int charAt(int pos) {
+		return mBuf[pos] & 0xff;
+	}
+
+	@Override
+	void onUrl(int start, int end) {
+		mLinkUrlStart = start;
+		mLinkUrlEnd = end;
+	}
+
+	@Override
+	void onParameter(int nameStart, int nameEnd, int valueStart, int valueEnd) {
+		if (equalsIgnoreCase(nameStart, nameEnd, "rel")) {
+			mLinkRels = Rel.parse(mBuf, valueStart, valueEnd);
+			mLinkHasRel = true;
+			if (Rel.primary(mLinkRels) == 0)
+				log.error("Undefined rel: [" + decode(valueStart, valueEnd) + "]");
+		}
+		else if (equalsIgnoreCase(nameStart, nameEnd, "datetime")) {
+			try {
+				mLinkEpochSecond = parseDate(valueStart, valueEnd);
+				mLinkHasDatetime = true;
+			} catch (IllegalArgumentException e) {
+				log.error(e.getMessage());
+			}
+		}
+		else if (equalsIgnoreCase(nameStart, nameEnd, "type")) {
+			mLinkTypeStart = valueStart;
+			mLinkTypeEnd = valueEnd;
+		}
+	}
+
+	private void add(int urlStart, int urlEnd, int rels, long epochSecond) {
+		if (mSize == mEpochSecond.length) {
+			int capacity = mSize * 2;
+			mUrlStart = Arrays.copyOf(mUrlStart, capacity);
+			mUrlLength = Arrays.copyOf(mUrlLength, capacity);
+			mRels = Arrays.copyOf(mRels, capacity);
+			mEpochSecond = Arrays.copyOf(mEpochSecond, capacity);
+		}
+		mUrlStart[mSize] = urlStart;
+		mUrlLength[mSize] = urlEnd - urlStart;
+		mRels[mSize] = rels;
+		mEpochSecond[mSize] = epochSecond;
+		mSize++;
+	}
+
+	/**
+	 * Widen the date into a reused char[] and hand it to SimpleDateTime, so
+	 * that no String is made.
+	 */
+	private long parseDate(int start, int end) {
+		int length = end - start;
+		if (length > MAX_DATE_LENGTH)
+			return SimpleDateTime.parseRfc1123(decode(start, end));
+		for (int i = 0; i < length; i++)
+			mDateChars[i] = (char) (mBuf[start + i] & 0xff);
+		return SimpleDateTime.parseRfc1123(mDateChars, 0, length);
+	}
+
+	private Link link(int urlStart, int urlEnd, int rels, String type) {
+		Link link = new Link();
+		link.setUrl(decode(urlStart, urlEnd));
+		link.setRels(rels);
+		link.setType(type);
+		return link;
+	}
+
+	@Override
+	String decode(int start, int end) {
+		return new String(mBuf, start, end - start, mCharset);
+	}
+
+	/**
+	 * A Memento that gets its URL and datetime from the index until they 
+	 * are set.
+	 */
+	private static class MementoView extends Memento {
+		private static final long serialVersionUID = 1L;
+
+		private final TimeMapIndex mIndex;
+		private final int mPosition;
+
+		MementoView(TimeMapIndex index, int position) {
+			mIndex = index;
+			mPosition = position;
+			setRels(index.mRels[position]);
+		}
+
+		@Override
+		public String getUrl() {
+			String url = super.getUrl();
+			return url != null ? url : mIndex.getUrl(mPosition);
+		}
+
+		@Override
+		public SimpleDateTime getDateTime() {
+			SimpleDateTime datetime = super.getDateTime();
+			return datetime != null ? datetime : mIndex.getDateTime(mPosition);
+		}
+
+		/**
+		 * The index is not serializable, so write a plain Memento instead.
+		 */
+		private Object writeReplace() {
+			Memento memento = new Memento();
+			memento.setUrl(getUrl());
+			memento.setRels(getRels());
+			memento.setDateTime(getDateTime());
+			memento.setArchiveId(getArchiveId());
+			return memento;
+		}
+	}
+}
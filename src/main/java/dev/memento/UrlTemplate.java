@@ -0,0 +1,126 @@
+package dev.memento;
+
+/*
+ * #%L
+ * mementoweb-java-client
+ * %%
+ * Copyright (C) 2012 - 2013 The British Library
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import java.io.Serializable;
+
+/**
+ * The shape shared by nearly all the memento URLs from one archive for one
+ * original resource:
+ *
+ *   <prefix><14-digit timestamp><suffix>
+ *
+ * e.g. prefix "http://web.archive.org/web/" and suffix "/http://www.bl.uk/".
+ * Mementos that fit a template only need to keep the timestamp.
+ */
+final class UrlTemplate implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	static final int TIMESTAMP_LENGTH = 14;
+
+	private final String mPrefix;
+	private final String mSuffix;
+
+	private UrlTemplate(String prefix, String suffix) {
+		mPrefix = prefix;
+		mSuffix = suffix;
+	}
+
+	/**
+	 * Make the template that the given URL fits.
+	 * @param url
+	 * @param timestampStart from {@link #findTimestamp(String)}.
+	 * @return
+	 */
+	static UrlTemplate forUrl(String url, int timestampStart) {
+		return new UrlTemplate(url.substring(0, timestampStart),
+				url.substring(timestampStart + TIMESTAMP_LENGTH));
+	}
+
+	/**
+	 * Look for a path segment starting with a 14-digit timestamp, e.g.
+	 * "/20010724154504/" or "/20010724154504id_/".
+	 * @param url
+	 * @return the index of the timestamp, or -1 if there is none.
+	 */
+	static int findTimestamp(String url) {
+		int digits = 0;
+		for (int i = 0; i < url.length(); i++) {
+			char c = url.charAt(i);
+			if (c >= '0' && c <= '9') {
+				digits++;
+				continue;
+			}
+			if (digits == TIMESTAMP_LENGTH && i > digits && url.charAt(i - digits - 1) == '/')
+				return i - digits;
+			digits = 0;
+		}
+		return -1;
+	}
+
+	/**
+	 * @param url
+	 * @param timestampStart from {@link #findTimestamp(String)}.
+	 * @return true if the URL is this template with some timestamp.
+	 */
+	boolean matches(String url, int timestampStart) {
+		int suffixStart = timestampStart + TIMESTAMP_LENGTH;
+		return timestampStart == mPrefix.length()
+				&& url.length() - suffixStart == mSuffix.length()
+				&& url.startsWith(mPrefix)
+				&& url.regionMatches(suffixStart, mSuffix, 0, mSuffix.length());
+	}
+
+	/**
+	 * @param url
+	 * @param timestampStart from {@link #findTimestamp(String)}.
+	 * @return the timestamp as a number, e.g. 20010724154504.
+	 */
+	static long parseTimestamp(String url, int timestampStart) {
+		long timestamp = 0;
+		for (int i = timestampStart; i < timestampStart + TIMESTAMP_LENGTH; i++)
+			timestamp = timestamp * 10 + (url.charAt(i) - '0');
+		return timestamp;
+	}
+
+	/**
+	 * @param timestamp
+	 * @return the URL with the given timestamp.
+	 */
+	String expand(long timestamp) {
+		char[] url = new char[mPrefix.length() + TIMESTAMP_LENGTH + mSuffix.length()];
+		mPrefix.getChars(0, mPrefix.length(), url, 0);
+		int end = mPrefix.length() + TIMESTAMP_LENGTH;
+		for (int i = end - 1; i >= mPrefix.length(); i--) {
+			url[i] = (char) ('0' + timestamp % 10);
+			timestamp /= 10;
+		}
+		mSuffix.getChars(0, mSuffix.length(), url, end);
+		return new String(url);
+	}
+
+	@Override
+	public String toString() {
+		return mPrefix + "{timestamp}" + mSuffix;
+	}
+}
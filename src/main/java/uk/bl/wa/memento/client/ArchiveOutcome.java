@@ -0,0 +1,108 @@
+package uk.bl.wa.memento.client;
+
+/*
+ * #%L
+ * MementoWeb Java Client
+ * %%
+ * Copyright (C) 2012 - 2015 The British Library
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * How the lookup at one archive went, as part of a {@link LookupResult}.
+ */
+public class ArchiveOutcome {
+
+	public enum Status {
+		/** The archive answered in time, with mementos or without. */
+		COMPLETED,
+		/** The archive had not answered by the deadline, so its lookup was cancelled. */
+		TIMED_OUT,
+		/** The lookup failed, see {@link ArchiveOutcome#getError()}. */
+		FAILED
+	}
+
+	private final int archiveId;
+	private final String timeGate;
+	private final Status status;
+	private final int statusCode;
+	private final Throwable error;
+	private final long elapsedMillis;
+	private final int mementos;
+
+	ArchiveOutcome(int archiveId, String timeGate, Status status, int statusCode, 
+			Throwable error, long elapsedMillis, int mementos) {
+		this.archiveId = archiveId;
+		this.timeGate = timeGate;
+		this.status = status;
+		this.statusCode = statusCode;
+		this.error = error;
+		this.elapsedMillis = elapsedMillis;
+		this.mementos = mementos;
+	}
+
+	/**
+	 * @return the archive id given to its mementos.
+	 */
+	public int getArchiveId() {
+		return archiveId;
+	}
+
+	public String getTimeGate() {
+		return timeGate;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return the HTTP status code that made the lookup fail, or -1 if it
+	 * did not fail because of one.
+	 */
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+	/**
+	 * @return why the lookup failed, or null.
+	 */
+	public Throwable getError() {
+		return error;
+	}
+
+	/**
+	 * @return how long the lookup took, or ran for before the deadline.
+	 */
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	/**
+	 * @return how many mementos the archive gave, before any were dropped 
+	 * as duplicates.
+	 */
+	public int getMementoCount() {
+		return mementos;
+	}
+
+	@Override
+	public String toString() {
+		return "ArchiveOutcome[" + timeGate + ": " + status 
+				+ (statusCode >= 0 ? " " + statusCode : "")
+				+ (error != null ? " (" + error + ")" : "")
+				+ ", " + mementos + " mementos in " + elapsedMillis + "ms]";
+	}
+}
@@ -0,0 +1,190 @@
+package uk.bl.wa.memento.client;
+
+/*
+ * #%L
+ * MementoWeb Java Client
+ * %%
+ * Copyright (C) 2012 - 2015 The British Library
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits how many lookups can be in progress at once against one archive,
+ * so that a slow archive can't take up all the threads and connections and
+ * hold up lookups at the others.  Lookups over the limit wait in a queue of
+ * limited length, for a limited time, and are rejected with a 
+ * {@link BulkheadFullException} after that.
+ * 
+ * A permit can be waited for by blocking, with {@link #acquire()}, or 
+ * without, with {@link #acquireAsync()}.  Either way it must be given
+ * back with {@link #release()}.  A lookup that no longer wants a permit it 
+ * is waiting for can stop waiting with {@link #cancel(CompletableFuture)}.
+ */
+public class Bulkhead {
+
+	// Times out waiting permits, for all bulkheads
+	private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "memento-bulkhead-timer");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private final String name;
+	private final int maxConcurrent;
+	private final int maxQueued;
+	private final long maxWaitMillis;
+
+	private int active;
+	private final Deque<CompletableFuture<Void>> waiting = new ArrayDeque<CompletableFuture<Void>>();
+
+	/**
+	 * @param name for messages, e.g. the archive's host.
+	 * @param maxConcurrent how many permits there are.
+	 * @param maxQueued how many can wait for a permit.
+	 * @param maxWaitMillis how long each can wait.
+	 */
+	public Bulkhead(String name, int maxConcurrent, int maxQueued, long maxWaitMillis) {
+		if (maxConcurrent < 1 || maxQueued < 0 || maxWaitMillis < 0)
+			throw new IllegalArgumentException("Bad bulkhead limits for " + name);
+		this.name = name;
+		this.maxConcurrent = maxConcurrent;
+		this.maxQueued = maxQueued;
+		this.maxWaitMillis = maxWaitMillis;
+	}
+
+	/**
+	 * @return a future that completes when a permit has been given, or 
+	 * completes exceptionally with a {@link BulkheadFullException} if the 
+	 * queue is full or the wait times out.
+	 */
+	public CompletableFuture<Void> acquireAsync() {
+		final CompletableFuture<Void> permit = new CompletableFuture<Void>();
+		synchronized (this) {
+			if (active < maxConcurrent) {
+				active++;
+				permit.complete(null);
+				return permit;
+			}
+			if (waiting.size() < maxQueued) {
+				waiting.add(permit);
+				timer.schedule(new Runnable() {
+					public void run() {
+						timeOut(permit);
+					}
+				}, maxWaitMillis, TimeUnit.MILLISECONDS);
+				return permit;
+			}
+		}
+		permit.completeExceptionally(new BulkheadFullException(name + " has " + maxQueued + " lookups waiting already"));
+		return permit;
+	}
+
+	private void timeOut(CompletableFuture<Void> permit) {
+		synchronized (this) {
+			if (!waiting.remove(permit))
+				return;
+		}
+		permit.completeExceptionally(new BulkheadFullException("Timed out after " + maxWaitMillis + "ms waiting for " + name));
+	}
+
+	/**
+	 * Wait for a permit.
+	 * @throws InterruptedException
+	 * @throws BulkheadFullException if the queue is full or the wait times out.
+	 */
+	public void acquire() throws InterruptedException {
+		CompletableFuture<Void> permit = acquireAsync();
+		try {
+			permit.get();
+		} catch (ExecutionException e) {
+			throw (BulkheadFullException) e.getCause();
+		} catch (InterruptedException e) {
+			// Give back the permit if it has been given, or stop waiting
+			if (!cancel(permit) && !permit.isCompletedExceptionally())
+				release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Stop waiting for a permit from {@link #acquireAsync()}.
+	 * @param permit
+	 * @return true if it was still waiting, and has been cancelled.  False
+	 * if it had been given already, and must still be released, or refused.
+	 */
+	public boolean cancel(CompletableFuture<Void> permit) {
+		if (!permit.cancel(false))
+			return false;
+		synchronized (this) {
+			waiting.remove(permit);
+		}
+		return true;
+	}
+
+	/**
+	 * Give back a permit, to the lookup that has waited longest if any.
+	 */
+	public void release() {
+		while (true) {
+			CompletableFuture<Void> next;
+			synchronized (this) {
+				next = waiting.poll();
+				if (next == null) {
+					active--;
+					return;
+				}
+			}
+			// Completed outside the lock, as it runs whatever was waiting.
+			// If it was cancelled, try the next one.
+			if (next.complete(null))
+				return;
+		}
+	}
+
+	/**
+	 * @return how many permits are in use.
+	 */
+	public synchronized int getActive() {
+		return active;
+	}
+
+	/**
+	 * @return how many are waiting for a permit.
+	 */
+	public synchronized int getQueued() {
+		return waiting.size();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String toString() {
+		return "Bulkhead[" + name + ": " + getActive() + "/" + maxConcurrent + " active, " 
+				+ getQueued() + "/" + maxQueued + " queued]";
+	}
+}
@@ -0,0 +1,66 @@
+package uk.bl.wa.memento.client;
+
+/*
+ * #%L
+ * MementoWeb Java Client
+ * %%
+ * Copyright (C) 2012 - 2015 The British Library
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Collections;
+import java.util.List;
+
+import dev.memento.MementoList;
+
+/**
+ * The mementos found by a lookup with a deadline, from the archives that
+ * answered in time, and how the lookup went at each archive.
+ */
+public class LookupResult {
+
+	private final MementoList mementos;
+	private final List<ArchiveOutcome> outcomes;
+
+	LookupResult(MementoList mementos, List<ArchiveOutcome> outcomes) {
+		this.mementos = mementos;
+		this.outcomes = Collections.unmodifiableList(outcomes);
+	}
+
+	/**
+	 * @return the merged mementos, possibly from only some of the archives.
+	 */
+	public MementoList getMementos() {
+		return mementos;
+	}
+
+	/**
+	 * @return the outcome at each archive, in archive id order.
+	 */
+	public List<ArchiveOutcome> getOutcomes() {
+		return outcomes;
+	}
+
+	/**
+	 * @return true if every archive answered in time.
+	 */
+	public boolean isComplete() {
+		for (ArchiveOutcome outcome : outcomes) {
+			if (outcome.getStatus() != ArchiveOutcome.Status.COMPLETED)
+				return false;
+		}
+		return true;
+	}
+}
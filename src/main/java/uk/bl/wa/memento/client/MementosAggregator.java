@@ -23,12 +23,32 @@ package uk.bl.wa.memento.client;
  * #L%
  */
 
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -42,12 +62,20 @@ import org.apache.http.client.config.RequestConfig;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.nio.client.HttpAsyncClient;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import dev.memento.AsyncMementoClient;
+import dev.memento.DedupPolicy;
+import dev.memento.HedgingBudget;
+import dev.memento.HttpStatusException;
+import dev.memento.LatencyTracker;
 import dev.memento.Memento;
 import dev.memento.MementoClient;
 import dev.memento.MementoList;
@@ -68,6 +96,10 @@ public class MementosAggregator {
 	private PoolingHttpClientConnectionManager cm = new PoolingHttpClientConnectionManager();
 
 	private CloseableHttpClient httpClient;
+	
+	// For lookupAsync(), started when first needed
+	private RequestConfig asyncRequestConfig;
+	private CloseableHttpAsyncClient asyncHttpClient;
 
 	private String[] defaultTimeMapPrefixes = {
 			"http://www.webarchive.org.uk/wayback/archive/timemap/link/",
@@ -85,8 +117,45 @@ public class MementosAggregator {
 	private List<String> timeGates;
 	
 	private Map<String,String> icons;
+	
+	private DedupPolicy dedupPolicy = DedupPolicy.ONE_PER_SECOND;
+	
+	// Limits on the lookups in progress at each archive, keyed by the
+	// TimeGate's host, so a slow archive can't starve the others
+	private int maxConcurrentPerArchive = 10;
+	private int maxQueuedPerArchive = 100;
+	private long bulkheadWaitMillis = 5000;
+	private final Map<String,Bulkhead> bulkheads = new HashMap<String,Bulkhead>();
+	
+	// Hedging of lookupAsync() requests, off unless set, and each archive's
+	// response times, also keyed by the TimeGate's host
+	private double hedgePercentile;
+	private HedgingBudget hedgingBudget;
+	private final Map<String,LatencyTracker> timeGateLatencies = new HashMap<String,LatencyTracker>();
+	private final Map<String,LatencyTracker> timeMapLatencies = new HashMap<String,LatencyTracker>();
+
+	// Runs the blocking lookups, one task per archive
+	private final ExecutorService executor;
+	private final boolean ownsExecutor;
 
 	public MementosAggregator() {
+		this(null);
+	}
+	
+	/**
+	 * @param executor runs each archive's lookup, as it blocks on HTTP.  If
+	 * null, a virtual thread is used for each lookup on runtimes that have
+	 * them, otherwise a new thread or an idle pooled one.
+	 */
+	public MementosAggregator(ExecutorService executor) {
+		if (executor == null) {
+			this.executor = newDefaultExecutor();
+			this.ownsExecutor = true;
+		} else {
+			this.executor = executor;
+			this.ownsExecutor = false;
+		}
+		
 		// Try to get latest list:
 		try {
 			getTimeMapPrefixes();
@@ -121,6 +190,8 @@ public class MementosAggregator {
 		RequestConfig requestConfig = RequestConfig.custom()
 				.setConnectTimeout(connectionTimeoutSeconds * 1000)
 				.setSocketTimeout(responseTimeoutSeconds * 1000).setProxy(proxy).build();
+		// The TimeGate's 302 is handled by the client
+		asyncRequestConfig = RequestConfig.copy(requestConfig).setRedirectsEnabled(false).build();
     	// Set up the client:
 		httpClient = HttpClients.custom()
 				.setDefaultRequestConfig(requestConfig)
@@ -139,65 +210,432 @@ public class MementosAggregator {
 	public MementoList lookup(String url) throws InterruptedException {
 		long start = System.currentTimeMillis();
 		
-		// Create a threadsafe holder for results:
-		ConcurrentHashMap<String,Memento> ms = new ConcurrentHashMap<String,Memento>();
-
-		// Spawn a thread for each timeMap endpoint:
-		// create a thread for each URI
-		GetThread[] threads = new GetThread[timeMapPrefixes.size()];
-		for (int i = 0; i < threads.length; i++) {
+		// Look up each TimeGate on the executor
+		List<Future<MementoList>> futures = new ArrayList<Future<MementoList>>();
+		for (int i = 0; i < timeGates.size(); i++) {
 			MementoClient httpget = new MementoClient(timeGates.get(i), httpClient);
-			threads[i] = new GetThread(ms, httpget, url);
-		}
-
-		// start the threads
-		for (int j = 0; j < threads.length; j++) {
-			threads[j].start();
+			futures.add(executor.submit(new GetTask(httpget, url, i, getBulkhead(timeGates.get(i)))));
 		}
 
-		// join the threads
-		for (int j = 0; j < threads.length; j++) {
-			threads[j].join();
+		// wait for them, keeping each archive's results in archive order
+		List<MementoList> runs = new ArrayList<MementoList>();
+		for (Future<MementoList> future : futures) {
+			try {
+				MementoList mementos = future.get();
+				if (mementos != null)
+					runs.add(mementos);
+			} catch (ExecutionException ex) {
+				log.error("ERROR-- " + ex.getCause() + " for " + url, ex.getCause());
+			}
 		}
+		
+		// Each archive's mementos are in date order, so merge them rather
+		// than sort them.  Where archives have mementos with the same 
+		// datetime, the dedup policy says which to keep.
+		MementoList ml = MementoList.merge(runs, dedupPolicy);
 		long end = System.currentTimeMillis();
 
-		log.info("Overall, took " + (end - start) + " got "+ms.values().size()+ " mementos.");
+		log.info("Overall, took " + (end - start) + " got "+ml.size()+ " mementos.");
 		
-		MementoList ml = new MementoList();
-		for( Memento m : ms.values()) {
-			ml.add(m);
+		return ml;
+	}
+
+	/**
+	 * Look up the URL at every archive at once without blocking, on a 
+	 * non-blocking HTTP client with a few I/O threads, rather than with a
+	 * thread for each archive.
+	 * @param url
+	 * @return the merged mementos, as {@link #lookup(String)} gives.  Archives
+	 * that fail are logged and left out.
+	 */
+	public CompletableFuture<MementoList> lookupAsync(final String url) {
+		final long start = System.currentTimeMillis();
+		final List<CompletableFuture<MementoList>> futures = new ArrayList<CompletableFuture<MementoList>>();
+		for (CompletableFuture<MementoList> future : lookupArchives(timeGates, url)) {
+			futures.add(future.handle(new BiFunction<MementoList, Throwable, MementoList>() {
+				public MementoList apply(MementoList mementos, Throwable ex) {
+					if (ex != null) {
+						log.error("ERROR-- " + ex + " for " + url);
+						return null;
+					}
+					return mementos;
+				}
+			}));
 		}
 		
-		return ml;
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]))
+				.thenApply(new Function<Void, MementoList>() {
+			public MementoList apply(Void done) {
+				List<MementoList> runs = new ArrayList<MementoList>();
+				for (CompletableFuture<MementoList> future : futures) {
+					MementoList mementos = future.join();
+					if (mementos != null)
+						runs.add(mementos);
+				}
+				MementoList ml = MementoList.merge(runs, dedupPolicy);
+				log.info("Overall, took " + (System.currentTimeMillis() - start) + " got " + ml.size() + " mementos.");
+				return ml;
+			}
+		});
+	}
+	
+	/**
+	 * Look up the URL at every archive, as {@link #lookupAsync(String)} does,
+	 * but return when the timeout is up, with the mementos from the 
+	 * archives that have answered by then.  Archives that have not are
+	 * cancelled: their requests are aborted, giving back their connections
+	 * and bulkhead permits, and those still waiting for a permit never 
+	 * start.  Any TimeMap pages they had read by then are dropped, rather
+	 * than returned as part of a TimeMap, and they are reported as 
+	 * {@link ArchiveOutcome.Status#TIMED_OUT}.
+	 * @param url
+	 * @param timeout for the whole lookup, including every TimeMap page.
+	 * @param unit
+	 * @return the mementos, and how the lookup went at each archive.
+	 * @throws InterruptedException
+	 */
+	public LookupResult lookup(String url, long timeout, TimeUnit unit) throws InterruptedException {
+		final long start = System.currentTimeMillis();
+		long deadline = start + unit.toMillis(timeout);
+		List<String> timeGates = this.timeGates;
+		List<CompletableFuture<MementoList>> futures = lookupArchives(timeGates, url);
+		
+		// When each archive finished
+		final long[] elapsed = new long[futures.size()];
+		for (int i = 0; i < futures.size(); i++) {
+			final int archiveId = i;
+			futures.get(i).whenComplete(new BiConsumer<MementoList, Throwable>() {
+				public void accept(MementoList mementos, Throwable ex) {
+					synchronized (elapsed) {
+						elapsed[archiveId] = System.currentTimeMillis() - start;
+					}
+				}
+			});
+		}
+		
+		try {
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]))
+					.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+		} catch (ExecutionException ex) {
+			// Some failed, which is reported below
+		} catch (TimeoutException ex) {
+			log.info("Deadline passed for " + url);
+		}
+		// Stop those still going.  Latest first, so that any queued behind
+		// another in a bulkhead stop waiting before it gives back its permit.
+		for (int i = futures.size() - 1; i >= 0; i--)
+			futures.get(i).cancel(false);
+		
+		List<MementoList> runs = new ArrayList<MementoList>();
+		List<ArchiveOutcome> outcomes = new ArrayList<ArchiveOutcome>();
+		for (int i = 0; i < futures.size(); i++) {
+			CompletableFuture<MementoList> future = futures.get(i);
+			ArchiveOutcome outcome;
+			synchronized (elapsed) {
+				// Done, but perhaps not yet timed by the callback above
+				if (elapsed[i] == 0)
+					elapsed[i] = System.currentTimeMillis() - start;
+				if (future.isCancelled()) {
+					outcome = new ArchiveOutcome(i, timeGates.get(i), ArchiveOutcome.Status.TIMED_OUT, 
+							-1, null, elapsed[i], 0);
+				} else if (future.isCompletedExceptionally()) {
+					Throwable error = getCause(future);
+					int statusCode = error instanceof HttpStatusException ? ((HttpStatusException) error).getStatusCode() : -1;
+					outcome = new ArchiveOutcome(i, timeGates.get(i), ArchiveOutcome.Status.FAILED, 
+							statusCode, error, elapsed[i], 0);
+				} else {
+					MementoList mementos = future.join();
+					runs.add(mementos);
+					outcome = new ArchiveOutcome(i, timeGates.get(i), ArchiveOutcome.Status.COMPLETED, 
+							-1, null, elapsed[i], mementos.size());
+				}
+			}
+			log.debug(outcome);
+			outcomes.add(outcome);
+		}
+		
+		MementoList ml = MementoList.merge(runs, dedupPolicy);
+		log.info("Overall, took " + (System.currentTimeMillis() - start) + " got " + ml.size() + " mementos.");
+		return new LookupResult(ml, outcomes);
+	}
+	
+	/**
+	 * @param future that completed exceptionally.
+	 * @return why.
+	 */
+	private static Throwable getCause(CompletableFuture<?> future) {
+		try {
+			future.join();
+			return null;
+		} catch (CompletionException ex) {
+			Throwable cause = ex;
+			while (cause instanceof CompletionException && cause.getCause() != null)
+				cause = cause.getCause();
+			return cause;
+		} catch (CancellationException ex) {
+			return ex;
+		}
+	}
+	
+	/**
+	 * Start the lookup at each archive, on the non-blocking client, within
+	 * the archive's bulkhead.  Cancelling an archive's future stops its 
+	 * lookup, or stops it waiting for a permit.
+	 * @param timeGates
+	 * @param url
+	 * @return the mementos from each archive, by archive id.
+	 */
+	private List<CompletableFuture<MementoList>> lookupArchives(List<String> timeGates, final String url) {
+		HttpAsyncClient client = getAsyncHttpClient();
+		HedgingBudget budget;
+		double percentile;
+		synchronized (this) {
+			budget = hedgingBudget;
+			percentile = hedgePercentile;
+		}
+		List<CompletableFuture<MementoList>> futures = new ArrayList<CompletableFuture<MementoList>>();
+		for (int i = 0; i < timeGates.size(); i++) {
+			final int archiveId = i;
+			final AsyncMementoClient mc = new AsyncMementoClient(timeGates.get(i), client);
+			if (budget != null)
+				mc.setHedging(getTimeGateLatency(timeGates.get(i)), 
+						getTimeMapLatency(timeGates.get(i)), percentile, budget);
+			final Bulkhead bulkhead = getBulkhead(timeGates.get(i));
+			final CompletableFuture<Void> permit = bulkhead.acquireAsync();
+			final AtomicBoolean cancelled = new AtomicBoolean();
+			final AtomicReference<CompletableFuture<MementoList>> lookup = new AtomicReference<CompletableFuture<MementoList>>();
+			final CompletableFuture<MementoList> started = permit.thenCompose(new Function<Void, CompletableFuture<MementoList>>() {
+				public CompletableFuture<MementoList> apply(Void v) {
+					CompletableFuture<MementoList> mementos = mc.lookup(url);
+					lookup.set(mementos);
+					// In case it was cancelled as the permit was given
+					if (cancelled.get())
+						mementos.cancel(false);
+					return mementos;
+				}
+			});
+			final CompletableFuture<MementoList> future = started.whenComplete(new BiConsumer<MementoList, Throwable>() {
+				public void accept(MementoList mementos, Throwable ex) {
+					if (!permit.isCompletedExceptionally())
+						bulkhead.release();
+				}
+			}).thenApply(new Function<MementoList, MementoList>() {
+				public MementoList apply(MementoList mementos) {
+					for (Memento m : mementos)
+						m.setArchiveId(archiveId);
+					return mementos;
+				}
+			});
+			// Cancelling the last stage doesn't reach the ones before it
+			future.whenComplete(new BiConsumer<MementoList, Throwable>() {
+				public void accept(MementoList mementos, Throwable ex) {
+					if (!future.isCancelled())
+						return;
+					cancelled.set(true);
+					bulkhead.cancel(permit);
+					CompletableFuture<MementoList> current = lookup.get();
+					if (current != null)
+						current.cancel(false);
+					started.cancel(false);
+				}
+			});
+			futures.add(future);
+		}
+		return futures;
+	}
+	
+	private synchronized HttpAsyncClient getAsyncHttpClient() {
+		if (asyncHttpClient == null) {
+			asyncHttpClient = HttpAsyncClients.custom()
+					.setDefaultRequestConfig(asyncRequestConfig)
+					.setMaxConnTotal(200)
+					.setMaxConnPerRoute(20)
+					.build();
+			asyncHttpClient.start();
+		}
+		return asyncHttpClient;
+	}
+	
+	/**
+	 * Stop the HTTP clients, and the executor if it is the default one.
+	 * @throws IOException
+	 */
+	public synchronized void close() throws IOException {
+		if (ownsExecutor)
+			executor.shutdown();
+		httpClient.close();
+		if (asyncHttpClient != null)
+			asyncHttpClient.close();
+	}
+
+	/**
+	 * Use a virtual thread per task where the runtime has them (Java 21 
+	 * on), found by reflection so this still builds and runs on Java 8.
+	 * Otherwise use daemon threads that are reused while they are idle.
+	 * @return
+	 */
+	static ExecutorService newDefaultExecutor() {
+		try {
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			log.debug("Using virtual threads for lookups.");
+			return (ExecutorService) method.invoke(null);
+		} catch (Exception e) {
+			log.debug("No virtual threads, using platform threads for lookups.");
+		}
+		final AtomicInteger count = new AtomicInteger();
+		return Executors.newCachedThreadPool(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "memento-lookup-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+	
+	/**
+	 * @param timeGate
+	 * @return the bulkhead for the archive with the given TimeGate, made with
+	 * the current limits the first time it is asked for.
+	 */
+	public synchronized Bulkhead getBulkhead(String timeGate) {
+		String host = getHost(timeGate);
+		Bulkhead bulkhead = bulkheads.get(host);
+		if (bulkhead == null) {
+			bulkhead = new Bulkhead(host, maxConcurrentPerArchive, maxQueuedPerArchive, bulkheadWaitMillis);
+			bulkheads.put(host, bulkhead);
+		}
+		return bulkhead;
+	}
+	
+	/**
+	 * Use the given limits for an archive rather than the defaults.
+	 * @param timeGate
+	 * @param maxConcurrent
+	 * @param maxQueued
+	 * @param maxWaitMillis
+	 */
+	public synchronized void setBulkhead(String timeGate, int maxConcurrent, int maxQueued, long maxWaitMillis) {
+		String host = getHost(timeGate);
+		bulkheads.put(host, new Bulkhead(host, maxConcurrent, maxQueued, maxWaitMillis));
+	}
+	
+	/**
+	 * Set the limits for archives that have not had their own set, and whose
+	 * bulkheads have not been made yet.
+	 * @param maxConcurrent lookups in progress at once at each archive.
+	 * @param maxQueued lookups waiting to start at each archive.
+	 * @param maxWaitMillis how long a lookup can wait to start.
+	 */
+	public synchronized void setDefaultBulkheadLimits(int maxConcurrent, int maxQueued, long maxWaitMillis) {
+		this.maxConcurrentPerArchive = maxConcurrent;
+		this.maxQueuedPerArchive = maxQueued;
+		this.bulkheadWaitMillis = maxWaitMillis;
+	}
+	
+	/**
+	 * Hedge the requests made by {@link #lookupAsync(String)}: a request 
+	 * that has not been answered in the given percentile of the archive's 
+	 * recent response times is sent again, and the first answer used.
+	 * @param percentile e.g. 95, or 0 to stop hedging.
+	 * @param budgetRatio the most extra requests, as a fraction of all the 
+	 * requests, e.g. 0.05.
+	 */
+	public synchronized void setHedging(double percentile, double budgetRatio) {
+		if (percentile <= 0) {
+			this.hedgingBudget = null;
+			return;
+		}
+		this.hedgePercentile = percentile;
+		this.hedgingBudget = new HedgingBudget(budgetRatio, 10);
+	}
+	
+	/**
+	 * @param timeGate
+	 * @return the recent TimeGate response times of the archive with the 
+	 * given TimeGate.
+	 */
+	public synchronized LatencyTracker getTimeGateLatency(String timeGate) {
+		return getLatencyTracker(timeGateLatencies, timeGate);
+	}
+	
+	/**
+	 * @param timeGate
+	 * @return the recent TimeMap page response times of the archive with 
+	 * the given TimeGate.
+	 */
+	public synchronized LatencyTracker getTimeMapLatency(String timeGate) {
+		return getLatencyTracker(timeMapLatencies, timeGate);
+	}
+	
+	private static LatencyTracker getLatencyTracker(Map<String,LatencyTracker> latencies, String timeGate) {
+		String host = getHost(timeGate);
+		LatencyTracker latency = latencies.get(host);
+		if (latency == null) {
+			latency = new LatencyTracker();
+			latencies.put(host, latency);
+		}
+		return latency;
+	}
+	
+	private static String getHost(String uri) {
+		try {
+			String host = new URI(uri).getHost();
+			if (host != null)
+				return host;
+		} catch (URISyntaxException e) {
+			log.debug("Can't find the host in " + uri);
+		}
+		return uri;
+	}
+	
+	/**
+	 * @return the executor that runs each archive's lookup.
+	 */
+	public ExecutorService getExecutor() {
+		return executor;
 	}
 
-	static class GetThread extends Thread {
+	static class GetTask implements Callable<MementoList> {
 
 		private final MementoClient mc;
 		private final String url;
-		private ConcurrentHashMap<String, Memento> ms;
+		private final int archiveId;
+		private final Bulkhead bulkhead;
 
-		public GetThread(ConcurrentHashMap<String, Memento> ms, MementoClient mc, String url) {
-			this.ms = ms;
+		public GetTask(MementoClient mc, String url, int archiveId, Bulkhead bulkhead) {
 			this.mc = mc;
 			this.url = url;
+			this.archiveId = archiveId;
+			this.bulkhead = bulkhead;
 		}
 
+		/**
+		 * @return the mementos found, or null if the lookup failed.
+		 */
 		@Override
-		public void run() {
+		public MementoList call() throws InterruptedException {
 			long start = System.currentTimeMillis();
+			MementoList mementos = null;
+			try {
+				bulkhead.acquire();
+			} catch (BulkheadFullException ex) {
+				log.warn("Skipping " + mc.getTimegateUri() + " for " + url + ": " + ex.getMessage());
+				return null;
+			}
 			try {
 				mc.setTargetURI(url);
-				for( Memento item: mc.getMementos()) {
-					log.debug("TG+"+mc.getTimegateUri()+":\n\t"+item.getUrl());
-					ms.put(item.getDateTimeString(), item);
-				}
+				mementos = mc.getMementos();
+				for (Memento m : mementos)
+					m.setArchiveId(archiveId);
 			} catch (RuntimeException ex) {
 				// Handle errors
 				log.error("ERROR-- " + ex + " for " + url, ex);
+			} finally {
+				bulkhead.release();
 			}
 			long end = System.currentTimeMillis();
 			log.debug("TG " + mc.getTimegateUri()+ " + " + url + " took " + (end - start));
+			return mementos;
 		}
 	}
 
@@ -249,6 +687,40 @@ public class MementosAggregator {
 		}
 	}
 	
+	/**
+	 * Look up at the given TimeGates, rather than those in the Memento
+	 * aggregator's list of archives.
+	 * @param timeGates in archive id order.
+	 */
+	public void setTimeGates(List<String> timeGates) {
+		this.timeGates = new ArrayList<String>(timeGates);
+	}
+	
+	/**
+	 * @param archiveId from {@link Memento#getArchiveId()}.
+	 * @return the TimeGate of the archive the memento came from, or null.
+	 */
+	public String getTimeGate(int archiveId) {
+		if (archiveId < 0 || archiveId >= timeGates.size())
+			return null;
+		return timeGates.get(archiveId);
+	}
+	
+	/**
+	 * @return what to do with mementos from different archives that have
+	 * the same datetime.
+	 */
+	public DedupPolicy getDedupPolicy() {
+		return dedupPolicy;
+	}
+	
+	/**
+	 * @param dedupPolicy by default {@link DedupPolicy#ONE_PER_SECOND}.
+	 */
+	public void setDedupPolicy(DedupPolicy dedupPolicy) {
+		this.dedupPolicy = dedupPolicy;
+	}
+	
 	public String getIconUriForMemento( Memento m ) {
 		for( String prefix: this.icons.keySet()) {
 			if( m.getUrl().startsWith(prefix)) return this.icons.get(prefix);
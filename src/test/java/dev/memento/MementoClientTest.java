@@ -20,9 +20,13 @@ package dev.memento;
  * #L%
  */
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.Before;
 import org.junit.Test;
 
@@ -48,6 +52,38 @@ public class MementoClientTest {
 		ms = mc.getMementos("http://www.webarchive.org.uk");
 	}
 
+	@Test
+	public void testParseCsvLinksToSink() {
+		final List<Memento> received = new ArrayList<Memento>();
+		final List<TimeMap> timeMaps = new ArrayList<TimeMap>();
+		mc.setMementoSink(new MementoSink() {
+			public void onMemento(Memento memento) {
+				received.add(memento);
+			}
+			public void onTimeMap(TimeMap timeMap) {
+				timeMaps.add(timeMap);
+			}
+			public void onTimeBundle(TimeBundle timeBundle) {
+			}
+			public void onOriginal(String url) {
+			}
+		});
+		
+		String links = "<http://www.bl.uk/>;rel=\"original\",\n" +
+				"<http://example.org/timemap/link/2/http://www.bl.uk/>;rel=\"timemap\";type=\"application/link-format\",\n" +
+				"<http://example.org/timemap/link/2/http://www.bl.uk/>;rel=\"timemap\";type=\"application/link-format\",\n" +
+				"<http://example.org/20010724154504/http://www.bl.uk/>;rel=\"first memento\";datetime=\"Tue, 24 Jul 2001 15:45:04 GMT\",\n" +
+				"<http://example.org/20010910203350/http://www.bl.uk/>;rel=\"memento\";datetime=\"Mon, 10 Sep 2001 20:33:50 GMT\"\n";
+		Memento first = mc.parseCsvLinks(links, true);
+		
+		assertEquals(2, received.size());
+		assertEquals(first, received.get(0));
+		assertEquals("http://example.org/20010910203350/http://www.bl.uk/", received.get(1).getUrl());
+		// Duplicate TimeMaps are only reported once
+		assertEquals(1, timeMaps.size());
+		assertEquals(0, mc.getMementos().size());
+	}
+
 	private void printMementosSummary(MementoList ms) {
 		System.out.println("Got " + ms.size() + " mementos.");
 		assertTrue("No mementos found!", ms.size() > 0);
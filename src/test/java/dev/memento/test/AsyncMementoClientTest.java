@@ -0,0 +1,287 @@
+package dev.memento.test;
+
+/*
+ * #%L
+ * mementoweb-java-client
+ * %%
+ * Copyright (C) 2012 - 2013 The British Library
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import dev.memento.AsyncMementoClient;
+import dev.memento.HedgingBudget;
+import dev.memento.HttpStatusException;
+import dev.memento.LatencyTracker;
+import dev.memento.MementoList;
+import dev.memento.SimpleDateTime;
+
+public class AsyncMementoClientTest {
+
+	private static final int BIG_TIMEMAP_SIZE = 5000;
+
+	private HttpServer mServer;
+	private ExecutorService mServerExecutor;
+	private AtomicInteger mSlowRequests = new AtomicInteger();
+	private CloseableHttpAsyncClient mHttpClient;
+	private String mBase;
+
+	@Before
+	public void setUp() throws IOException {
+		mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		mBase = "http://127.0.0.1:" + mServer.getAddress().getPort();
+		mServer.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				String path = exchange.getRequestURI().getPath();
+				if (path.equals("/slow/http://www.bl.uk/")) {
+					// Only the first request is slow
+					if (mSlowRequests.getAndIncrement() == 0) {
+						try {
+							Thread.sleep(1500);
+						} catch (InterruptedException e) {
+						}
+					}
+					respond(exchange, 404, "");
+				}
+				else if (path.equals("/timegate/http://www.bl.uk/")) {
+					exchange.getResponseHeaders().add("Location", mBase + "/web/20010724154504/http://www.bl.uk/");
+					exchange.getResponseHeaders().add("Link", 
+							"<http://www.bl.uk/>;rel=\"original\", " +
+							"<" + mBase + "/timemap/1>;rel=\"timemap\";type=\"application/link-format\", " +
+							"<" + mBase + "/web/20010724154504/http://www.bl.uk/>;rel=\"memento\";datetime=\"Tue, 24 Jul 2001 15:45:04 GMT\"");
+					respond(exchange, 302, "");
+				}
+				else if (path.equals("/timemap/1")) {
+					respond(exchange, 200, 
+							"<" + mBase + "/timemap/1>;rel=\"self timemap\";type=\"application/link-format\",\n" +
+							"<" + mBase + "/timemap/2>;rel=\"timemap\";type=\"application/link-format\",\n" +
+							"<" + mBase + "/web/20010724154504/http://www.bl.uk/>;rel=\"first memento\";datetime=\"Tue, 24 Jul 2001 15:45:04 GMT\",\n" +
+							"<" + mBase + "/web/20020101000000/http://www.bl.uk/>;rel=\"memento\";datetime=\"Tue, 01 Jan 2002 00:00:00 GMT\"\n");
+				}
+				else if (path.equals("/timemap/2")) {
+					respond(exchange, 200, 
+							"<" + mBase + "/timemap/1>;rel=\"timemap\";type=\"application/link-format\",\n" +
+							"<" + mBase + "/web/20000101000000/http://www.bl.uk/>;rel=\"memento\";datetime=\"Sat, 01 Jan 2000 00:00:00 GMT\",\n" +
+							"<" + mBase + "/web/20030101000000/http://www.bl.uk/>;rel=\"last memento\";datetime=\"Wed, 01 Jan 2003 00:00:00 GMT\"\n");
+				}
+				else if (path.equals("/bigtimegate/http://www.bl.uk/")) {
+					exchange.getResponseHeaders().add("Link", 
+							"<" + mBase + "/timemap/big>;rel=\"timemap\";type=\"application/link-format\"");
+					respond(exchange, 302, "");
+				}
+				else if (path.equals("/timemap/big")) {
+					// Far bigger than a buffer, with URLs that aren't ASCII
+					StringBuilder links = new StringBuilder();
+					for (int i = 0; i < BIG_TIMEMAP_SIZE; i++) {
+						links.append("<" + mBase + "/web/" + String.format("2001%010d", i) + "/http://www.bl.uk/caf\u00e9>;")
+							.append("rel=\"memento\";datetime=\"")
+							.append(new SimpleDateTime(1000000000L + i * 60L).longDateFormatted()).append("\",\n");
+					}
+					exchange.getResponseHeaders().add("Content-Type", "application/link-format; charset=UTF-8");
+					respond(exchange, 200, links.toString());
+				}
+				else if (path.equals("/unavailabletimegate/http://www.bl.uk/")) {
+					exchange.getResponseHeaders().add("Link", 
+							"<" + mBase + "/timemap/unavailable>;rel=\"timemap\";type=\"application/link-format\"");
+					respond(exchange, 302, "");
+				}
+				else if (path.equals("/timemap/unavailable")) {
+					// An error page far bigger than a buffer
+					StringBuilder page = new StringBuilder();
+					while (page.length() < 50000)
+						page.append("<p>Service unavailable</p>\n");
+					respond(exchange, 503, page.toString());
+				}
+				else if (path.startsWith("/timegate/")) {
+					respond(exchange, 404, "");
+				}
+				else {
+					respond(exchange, 500, "");
+				}
+			}
+		});
+		mServerExecutor = Executors.newCachedThreadPool();
+		mServer.setExecutor(mServerExecutor);
+		mServer.start();
+		mHttpClient = HttpAsyncClients.custom()
+				.setDefaultRequestConfig(RequestConfig.custom().setRedirectsEnabled(false).build())
+				.build();
+		mHttpClient.start();
+	}
+
+	private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes("UTF-8");
+		// Keep the client from reusing connections the server may drop
+		exchange.getResponseHeaders().add("Connection", "close");
+		exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(bytes);
+		out.close();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		mHttpClient.close();
+		mServer.stop(0);
+		mServerExecutor.shutdownNow();
+	}
+
+	@Test
+	public void testFollowsTimeMapPages() throws Exception {
+		AsyncMementoClient client = new AsyncMementoClient(mBase + "/timegate/", mHttpClient);
+		MementoList mementos = client.lookup("http://www.bl.uk/").get();
+		assertEquals(4, mementos.size());
+		assertTrue(mementos.isSorted());
+		assertEquals(mBase + "/web/20000101000000/http://www.bl.uk/", mementos.getFirst().getUrl());
+		assertEquals(mBase + "/web/20030101000000/http://www.bl.uk/", mementos.getLast().getUrl());
+	}
+
+	@Test
+	public void testLargeTimeMap() throws Exception {
+		AsyncMementoClient client = new AsyncMementoClient(mBase + "/bigtimegate/", mHttpClient);
+		MementoList mementos = client.lookup("http://www.bl.uk/").get();
+		assertEquals(BIG_TIMEMAP_SIZE, mementos.size());
+		for (int i = 0; i < BIG_TIMEMAP_SIZE; i++) {
+			assertEquals(mBase + "/web/" + String.format("2001%010d", i) + "/http://www.bl.uk/caf\u00e9", 
+					mementos.get(i).getUrl());
+		}
+	}
+
+	@Test
+	public void testLargeErrorPage() throws Exception {
+		AsyncMementoClient client = new AsyncMementoClient(mBase + "/unavailabletimegate/", mHttpClient);
+		try {
+			client.lookup("http://www.bl.uk/").get(5, TimeUnit.SECONDS);
+			fail();
+		}
+		catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof HttpStatusException);
+			assertEquals(503, ((HttpStatusException) e.getCause()).getStatusCode());
+		}
+	}
+
+	@Test
+	public void testNoMementos() throws Exception {
+		AsyncMementoClient client = new AsyncMementoClient(mBase + "/timegate/", mHttpClient);
+		assertTrue(client.lookup("http://example.org/").get().isEmpty());
+	}
+
+	@Test
+	public void testUnexpectedResponse() throws Exception {
+		AsyncMementoClient client = new AsyncMementoClient(mBase + "/other/", mHttpClient);
+		try {
+			client.lookup("http://www.bl.uk/").get();
+			fail();
+		}
+		catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IOException);
+		}
+	}
+
+	@Test
+	public void testHedging() throws Exception {
+		LatencyTracker latency = new LatencyTracker();
+		for (int i = 0; i < 20; i++)
+			latency.record(10);
+		AsyncMementoClient client = new AsyncMementoClient(mBase + "/slow/", mHttpClient);
+		client.setHedging(latency, new LatencyTracker(), 95, new HedgingBudget(1, 1));
+		long start = System.currentTimeMillis();
+		assertTrue(client.lookup("http://www.bl.uk/").get().isEmpty());
+		assertTrue(System.currentTimeMillis() - start < 1000);
+		assertEquals(2, mSlowRequests.get());
+		// The cancelled request is timed too
+		for (int i = 0; i < 100 && latency.getCount() < 22; i++)
+			Thread.sleep(10);
+		assertEquals(22, latency.getCount());
+	}
+
+	@Test
+	public void testNoHedgingWithoutBudget() throws Exception {
+		LatencyTracker latency = new LatencyTracker();
+		for (int i = 0; i < 20; i++)
+			latency.record(10);
+		AsyncMementoClient client = new AsyncMementoClient(mBase + "/slow/", mHttpClient);
+		client.setHedging(latency, new LatencyTracker(), 95, new HedgingBudget(0, 1));
+		long start = System.currentTimeMillis();
+		assertTrue(client.lookup("http://www.bl.uk/").get().isEmpty());
+		assertTrue(System.currentTimeMillis() - start >= 1000);
+		assertEquals(1, mSlowRequests.get());
+		assertEquals(21, latency.getCount());
+	}
+
+	@Test
+	public void testCancel() throws Exception {
+		// Too few response times to hedge, but each request is timed
+		LatencyTracker latency = new LatencyTracker();
+		AsyncMementoClient client = new AsyncMementoClient(mBase + "/slow/", mHttpClient);
+		client.setHedging(latency, new LatencyTracker(), 95, new HedgingBudget(1, 1));
+		CompletableFuture<MementoList> mementos = client.lookup("http://www.bl.uk/");
+		Thread.sleep(200);
+		assertTrue(mementos.cancel(false));
+		// The request was aborted, rather than left to finish
+		assertEquals(1, latency.getCount());
+		assertEquals(1, mSlowRequests.get());
+	}
+
+	@Test
+	public void testLatencyTracker() {
+		LatencyTracker latency = new LatencyTracker(100);
+		assertEquals(-1, latency.getPercentile(50));
+		for (int i = 1; i <= 200; i++)
+			latency.record(i);
+		// Only the last 100 are kept
+		assertEquals(100, latency.getCount());
+		assertEquals(150, latency.getPercentile(50));
+		assertEquals(195, latency.getPercentile(95));
+		assertEquals(200, latency.getPercentile(100));
+	}
+
+	@Test
+	public void testHedgingBudget() {
+		HedgingBudget budget = new HedgingBudget(0.5, 1);
+		assertFalse(budget.tryHedge());
+		budget.onRequest();
+		assertFalse(budget.tryHedge());
+		budget.onRequest();
+		budget.onRequest();
+		budget.onRequest();
+		assertTrue(budget.tryHedge());
+		// Only one could be saved up
+		assertFalse(budget.tryHedge());
+	}
+}
@@ -0,0 +1,238 @@
+package dev.memento.test;
+
+/*
+ * #%L
+ * mementoweb-java-client
+ * %%
+ * Copyright (C) 2012 - 2013 The British Library
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import static org.junit.Assert.*;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import dev.memento.Link;
+import dev.memento.LinkParser;
+import dev.memento.Memento;
+import dev.memento.MementoSink;
+import dev.memento.SimpleDateTime;
+import dev.memento.TimeBundle;
+import dev.memento.TimeMap;
+
+public class LinkParserTest {
+
+	private String timeMap =
+			"<http://mementoproxy.lanl.gov/aggr/timebundle/http://www.harding.edu/fmccown/>;rel=\"timebundle\",\n" +
+			"<http://www.harding.edu/fmccown/>;rel=\"original\",\n" +
+			"<http://mementoproxy.lanl.gov/aggr/timemap/link/http://www.harding.edu/fmccown/>;rel=\"timemap\";type=\"application/link-format\" ,\n" +
+			"<http://web.archive.org/web/20010724154504/www.harding.edu/fmccown/>;rel=\"first memento\";datetime=\"Tue, 24 Jul 2001 15:45:04 GMT\",\n" +
+			"<http://web.archive.org/web/20010910203350/www.harding.edu/fmccown/?a=1,2;b>; rel = \"memento\" ; datetime=\"Mon, 10 Sep 2001 20:33:50 GMT\",\n" +
+			"<http://web.archive.org/web/20020101000000/www.harding.edu/fmccown/>;rel=memento;license=\"http://example.org/\";datetime=\"Tue, 01 Jan 2002 00:00:00 GMT\"\n";
+
+	@Test
+	public void testParseTimeMap() {
+		LinkParser parser = new LinkParser(timeMap);
+
+		Link link = parser.next();
+		assertEquals("http://mementoproxy.lanl.gov/aggr/timebundle/http://www.harding.edu/fmccown/", link.getUrl());
+		assertEquals("timebundle", link.getRel());
+
+		link = parser.next();
+		assertEquals("http://www.harding.edu/fmccown/", link.getUrl());
+		assertEquals("original", link.getRel());
+
+		link = parser.next();
+		assertEquals("timemap", link.getRel());
+		assertEquals("application/link-format", link.getType());
+
+		link = parser.next();
+		assertEquals("first memento", link.getRel());
+		assertEquals(new SimpleDateTime("Tue, 24 Jul 2001 15:45:04 GMT"), link.getDatetime());
+
+		// Commas and semicolons inside the URL, spaces around = and ;
+		link = parser.next();
+		assertEquals("http://web.archive.org/web/20010910203350/www.harding.edu/fmccown/?a=1,2;b", link.getUrl());
+		assertEquals("memento", link.getRel());
+		assertEquals(new SimpleDateTime("Mon, 10 Sep 2001 20:33:50 GMT"), link.getDatetime());
+
+		// Unquoted values and unknown parameters
+		link = parser.next();
+		assertEquals("memento", link.getRel());
+		assertEquals(new SimpleDateTime("Tue, 01 Jan 2002 00:00:00 GMT"), link.getDatetime());
+
+		assertNull(parser.next());
+	}
+
+	@Test
+	public void testSkipsMalformedLinks() {
+		LinkParser parser = new LinkParser(
+				"http://no.brackets/;rel=\"memento\",<http://www.harding.edu/fmccown/>;rel=\"original\"");
+
+		Link link = parser.next();
+		assertEquals("http://www.harding.edu/fmccown/", link.getUrl());
+		assertEquals("original", link.getRel());
+		assertNull(parser.next());
+	}
+
+	@Test
+	public void testEmpty() {
+		assertNull(new LinkParser("").next());
+		assertNull(new LinkParser(" ,\n ").next());
+	}
+
+	@Test
+	public void testParseFromReader() {
+		// Hand out a few characters at a time so that links straddle refills
+		LinkParser expected = new LinkParser(timeMap);
+		LinkParser actual = new LinkParser(new FilterReader(new StringReader(timeMap)) {
+			private int n = 0;
+			@Override
+			public int read(char[] cbuf, int off, int len) throws IOException {
+				n = n % 7 + 1;
+				return super.read(cbuf, off, Math.min(len, n));
+			}
+		});
+
+		Link link;
+		while ((link = expected.next()) != null) {
+			assertEquals(link.toString(), actual.next().toString());
+		}
+		assertNull(actual.next());
+		assertNull(actual.ioException());
+	}
+
+	@Test
+	public void testReaderFailure() {
+		final IOException failure = new IOException("Connection reset");
+		LinkParser parser = new LinkParser(new Reader() {
+			private boolean first = true;
+			@Override
+			public int read(char[] cbuf, int off, int len) throws IOException {
+				if (!first)
+					throw failure;
+				first = false;
+				String s = "<http://www.harding.edu/fmccown/>;rel=\"original\",<http://web.arc";
+				s.getChars(0, s.length(), cbuf, off);
+				return s.length();
+			}
+			@Override
+			public void close() {
+			}
+		});
+
+		assertEquals("original", parser.next().getRel());
+		assertNull(parser.next());
+		assertSame(failure, parser.ioException());
+	}
+
+	@Test
+	public void testParseToSink() {
+		final List<String> events = new ArrayList<String>();
+		int links = new LinkParser(timeMap).parse(new MementoSink() {
+			public void onMemento(Memento memento) {
+				events.add("memento " + memento.getDateTime().getYear());
+			}
+			public void onTimeMap(TimeMap timeMap) {
+				events.add("timemap " + timeMap.getType());
+			}
+			public void onTimeBundle(TimeBundle timeBundle) {
+				events.add("timebundle " + timeBundle.getUrl());
+			}
+			public void onOriginal(String url) {
+				events.add("original " + url);
+			}
+		});
+
+		assertEquals(6, links);
+		assertEquals(6, events.size());
+		assertEquals("timebundle http://mementoproxy.lanl.gov/aggr/timebundle/http://www.harding.edu/fmccown/", events.get(0));
+		assertEquals("original http://www.harding.edu/fmccown/", events.get(1));
+		assertEquals("timemap application/link-format", events.get(2));
+		assertEquals("memento 2001", events.get(3));
+		assertEquals("memento 2001", events.get(4));
+		assertEquals("memento 2002", events.get(5));
+	}
+
+	@Test
+	public void testFeed() {
+		EventSink whole = new EventSink();
+		new LinkParser(timeMap).parse(whole);
+		assertEquals(6, whole.mEvents.size());
+
+		// However the input is split, the links come out the same
+		for (int piece = 1; piece < 40; piece += 3) {
+			EventSink fed = new EventSink();
+			LinkParser parser = new LinkParser(fed);
+			for (int i = 0; i < timeMap.length(); i += piece) {
+				char[] chars = timeMap.substring(i, Math.min(timeMap.length(), i + piece)).toCharArray();
+				parser.feed(chars, 0, chars.length);
+			}
+			// The last link may not be complete until the end
+			assertTrue(fed.mEvents.size() >= 5);
+			parser.finish();
+			assertEquals(whole.mEvents, fed.mEvents);
+		}
+	}
+
+	@Test
+	public void testFeedMalformed() {
+		// Commas in quoted strings, escaped quotes included, don't end the
+		// entries being skipped
+		String links = "<http://bad/> junk \"a,b\" more, " +
+				"no url \"c\\\",d\", " +
+				"<http://good/>;rel=\"memento\";datetime=\"Tue, 24 Jul 2001 15:45:04 GMT\"";
+		EventSink whole = new EventSink();
+		new LinkParser(links).parse(whole);
+		assertEquals(1, whole.mEvents.size());
+		assertTrue(whole.mEvents.get(0).startsWith("memento http://good/ "));
+		
+		// However the input is split
+		for (int split = 1; split < links.length(); split++) {
+			EventSink fed = new EventSink();
+			LinkParser parser = new LinkParser(fed);
+			char[] chars = links.toCharArray();
+			parser.feed(chars, 0, split);
+			parser.feed(chars, split, chars.length - split);
+			parser.finish();
+			assertEquals("Split at " + split, whole.mEvents, fed.mEvents);
+		}
+	}
+
+	private static class EventSink implements MementoSink {
+		List<String> mEvents = new ArrayList<String>();
+
+		public void onMemento(Memento memento) {
+			mEvents.add("memento " + memento.getUrl() + " " + memento.getDateTime());
+		}
+		public void onTimeMap(TimeMap timeMap) {
+			mEvents.add("timemap " + timeMap.getUrl() + " " + timeMap.getType());
+		}
+		public void onTimeBundle(TimeBundle timeBundle) {
+			mEvents.add("timebundle " + timeBundle.getUrl());
+		}
+		public void onOriginal(String url) {
+			mEvents.add("original " + url);
+		}
+	}
+}
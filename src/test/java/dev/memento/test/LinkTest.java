@@ -47,6 +47,7 @@ import static org.junit.Assert.*;
 import org.junit.Test;
 
 import dev.memento.Link;
+import dev.memento.Rel;
 import dev.memento.SimpleDateTime;
 
 public class LinkTest {
@@ -69,8 +70,10 @@ public class LinkTest {
 		String url = "http://webcache.googleusercontent.com/search?q=cache:http://www.digitalpreservation.gov/";
 		assertEquals(url, link.getUrl());
 		
-		String expectedRel = "first-memento last-memento memento";
+		// The hyphenated rels of earlier drafts are read as separate rels
+		String expectedRel = "first last memento";
 		assertEquals(expectedRel, link.getRel());
+		assertEquals(Rel.FIRST | Rel.LAST | Rel.MEMENTO, link.getRels());
 		
 		SimpleDateTime expectedDatetime = new SimpleDateTime("Tue, 07 Sep 2010 11:54:29 GMT");
 		assertEquals(expectedDatetime, link.getDatetime());
@@ -105,8 +108,8 @@ public class LinkTest {
 		Link link = new Link(linkStrings[0]);
 		
 		String[] rels = link.getRelArray();
-		assertEquals("first-memento", rels[0]);
-		assertEquals("last-memento", rels[1]);
+		assertEquals("first", rels[0]);
+		assertEquals("last", rels[1]);
 		assertEquals("memento", rels[2]);
 	}
 
@@ -0,0 +1,155 @@
+package dev.memento.test;
+
+/*
+ * #%L
+ * mementoweb-java-client
+ * %%
+ * Copyright (C) 2012 - 2013 The British Library
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import dev.memento.Link;
+import dev.memento.MappedMementoList;
+import dev.memento.Memento;
+import dev.memento.MementoList;
+import dev.memento.SimpleDateTime;
+
+public class MappedMementoListTest {
+
+	@Rule
+	public TemporaryFolder mFolder = new TemporaryFolder();
+
+	private MementoList list() {
+		MementoList list = new MementoList();
+		list.add(memento("http://web.archive.org/web/20010724154504/http://www.bl.uk/", "first memento", "Tue, 24 Jul 2001 15:45:04 GMT"));
+		list.add(memento("http://web.archive.org/web/20010910203350/http://www.bl.uk/", "memento", "Mon, 10 Sep 2001 20:33:50 GMT"));
+		list.add(memento("http://example.org/caf\u00e9", "memento", "Tue, 01 Jan 2002 00:00:00 GMT"));
+		list.add(memento("http://webarchive.org.uk/20030314083000/http://www.bl.uk/", "last memento", "Fri, 14 Mar 2003 08:30:00 GMT"));
+		return list;
+	}
+
+	private Memento memento(String url, String rel, String datetime) {
+		return new Memento(new Link("<" + url + ">;rel=\"" + rel + "\";datetime=\"" + datetime + "\""));
+	}
+
+	@Test
+	public void testWriteAndOpen() throws IOException {
+		MementoList list = list();
+		list.get(1).setArchiveId(3);
+		File file = mFolder.newFile("mementos.dat");
+		MappedMementoList written = MappedMementoList.write(list, file);
+		MappedMementoList mapped = MappedMementoList.open(file);
+		for (MappedMementoList m : new MappedMementoList[] { written, mapped }) {
+			assertEquals(list.size(), m.size());
+			for (int i = 0; i < list.size(); i++) {
+				assertEquals(list.get(i), m.get(i));
+				assertEquals(list.get(i).getUrl(), m.getUrl(i));
+				assertEquals(list.get(i).getArchiveId(), m.getArchiveId(i));
+				assertEquals(list.get(i).getArchiveId(), m.get(i).getArchiveId());
+			}
+		}
+		SimpleDateTime date = new SimpleDateTime("Tue, 01 Jan 2002 00:00:00 GMT");
+		assertEquals(list.getClosestDate(date), mapped.getClosestDate(date));
+		assertEquals(list.getNext(date), mapped.getNext(date));
+		assertEquals(list.getPrevious(date), mapped.getPrevious(date));
+		assertEquals(list.getAllYears(), mapped.getAllYears());
+		assertEquals(list.getMonthsForYear(2001), mapped.getMonthsForYear(2001));
+		assertTrue(mapped.isLast(new SimpleDateTime("Fri, 14 Mar 2003 08:30:00 GMT")));
+	}
+
+	@Test
+	public void testEmpty() throws IOException {
+		MappedMementoList mapped = MappedMementoList.write(new MementoList(), mFolder.newFile("empty.dat"));
+		assertEquals(0, mapped.size());
+		assertNull(mapped.getFirst());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNotInDateOrder() throws IOException {
+		MementoList list = list();
+		list.add(list.get(0));
+		MappedMementoList.write(list, mFolder.newFile("unsorted.dat"));
+	}
+
+	@Test
+	public void testRewriteWhileMapped() throws IOException {
+		MementoList list = list();
+		File file = mFolder.newFile("mementos.dat");
+		MappedMementoList mapped = MappedMementoList.write(list, file);
+		
+		// The list already mapped keeps seeing the old file
+		MementoList shorter = new MementoList();
+		shorter.add(list.get(3));
+		MappedMementoList rewritten = MappedMementoList.write(shorter, file);
+		assertEquals(1, rewritten.size());
+		assertEquals(list.get(3).getUrl(), rewritten.getUrl(0));
+		assertEquals(list.size(), mapped.size());
+		assertEquals(list.get(2).getUrl(), mapped.getUrl(2));
+		assertEquals(1, mFolder.getRoot().list().length);
+	}
+
+	@Test(expected = IOException.class)
+	public void testCorruptUrlLength() throws IOException {
+		MappedMementoList.open(corruptFile(), true);
+	}
+
+	@Test
+	public void testCorruptUrlFoundOnRead() throws IOException {
+		// Not checked when opened, only when read
+		MappedMementoList mapped = MappedMementoList.open(corruptFile());
+		assertEquals(4, mapped.size());
+		assertNotNull(mapped.getUrl(2));
+		try {
+			mapped.getUrl(3);
+			fail();
+		}
+		catch (IllegalStateException e) {
+		}
+	}
+
+	/**
+	 * @return a file with the URL length of the last record too long.
+	 */
+	private File corruptFile() throws IOException {
+		File file = mFolder.newFile("corrupt.dat");
+		MappedMementoList.write(list(), file);
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.seek(16 + 3 * 28 + 16);
+		raf.writeInt(1000);
+		raf.close();
+		return file;
+	}
+
+	@Test(expected = IOException.class)
+	public void testNotAList() throws IOException {
+		File file = mFolder.newFile("other.dat");
+		FileOutputStream out = new FileOutputStream(file);
+		out.write("Not a list of mementos".getBytes("US-ASCII"));
+		out.close();
+		MappedMementoList.open(file);
+	}
+}
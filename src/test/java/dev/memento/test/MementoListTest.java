@@ -22,14 +22,23 @@ package dev.memento.test;
 
 
 import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Random;
 import java.util.TreeMap;
 
+import dev.memento.DedupPolicy;
+import dev.memento.Granularity;
 import dev.memento.Link;
 import dev.memento.Memento;
 import dev.memento.MementoList;
+import dev.memento.MementoRange;
 import dev.memento.SimpleDateTime;
 import junit.framework.TestCase;
 
@@ -180,4 +189,331 @@ public class MementoListTest extends TestCase {
 		list = mList.getByMonthAndYear(1, 2013);
 		assertEquals(mList.get(4), list[0]);
 	}
+	
+	public void testUrlsKeptAsTemplates() {
+		// All the URLs come back as they went in
+		for (int i = 0; i < mLinks.length; i++) {
+			assertEquals(new Link(mLinks[i]).getUrl(), mList.get(i).getUrl());
+		}
+		
+		String[] urls = {
+				"http://web.archive.org/web/20010724154504id_/http://www.bl.uk/",
+				"http://archive.today/20010724154504/http://www.bl.uk/20010724154504/",
+				"http://archive.today/abcdefgh",
+				"http://example.org/0010724154504/",
+				"20010724154504/http://www.bl.uk/"
+		};
+		MementoList list = new MementoList();
+		for (String url : urls) {
+			Memento m = new Memento(new Link(mLinks[0]));
+			m.setUrl(url);
+			list.add(m);
+		}
+		for (int i = 0; i < urls.length; i++) {
+			assertEquals(urls[i], list.get(i).getUrl());
+		}
+		
+		// Changing the URL afterwards replaces the template
+		list.get(0).setUrl("http://example.org/");
+		assertEquals("http://example.org/", list.get(0).getUrl());
+		assertEquals(urls[1], list.get(1).getUrl());
+		
+		// The list keeps a compacted copy and leaves the memento added alone
+		Memento m = new Memento(new Link(mLinks[0]));
+		list.add(m);
+		assertNotSame(m, list.get(urls.length));
+		assertEquals(m, list.get(urls.length));
+		assertEquals(new Link(mLinks[0]).getUrl(), m.getUrl());
+	}
+	
+	public void testNavigation() {
+		SimpleDateTime first = mList.get(0).getDateTime();
+		SimpleDateTime last = mList.getLast().getDateTime();
+		SimpleDateTime between = new SimpleDateTime("Sun, 01 Jul 2012 00:00:00 GMT");
+		
+		assertEquals(mList.get(1), mList.getNext(first));
+		assertEquals(mList.get(2), mList.getNext(between));
+		assertNull(mList.getNext(last));
+		
+		assertNull(mList.getPrevious(first));
+		assertEquals(mList.get(1), mList.getPrevious(between));
+		assertEquals(mList.get(3), mList.getPrevious(last));
+		
+		assertEquals(mList.get(0), mList.getClosestDate(new SimpleDateTime("Thu, 01 Jan 2009 00:00:00 GMT")));
+		assertEquals(mList.get(4), mList.getClosestDate(new SimpleDateTime("Thu, 01 Jan 2015 00:00:00 GMT")));
+		assertEquals(mList.get(3), mList.getClosestDate(new SimpleDateTime("Tue, 01 Jan 2013 00:00:00 GMT")));
+		
+		assertTrue(mList.isFirst(first));
+		assertTrue(mList.isLast(last));
+		assertEquals(first.getEpochSecond(), mList.getEpochSecond(0));
+		
+		// Searches still work after changes not made through add()
+		mList.remove(0);
+		assertEquals(-1, mList.getIndex(first));
+		assertEquals(0, mList.getIndexByDate(new SimpleDateTime("Wed, 18 Jan 2012 23:59:59 GMT")));
+		assertEquals(mList.get(0), mList.getNext(first));
+		
+		mList.add(0, new Memento(new Link(mLinks[0])));
+		assertEquals(0, mList.getIndex(first));
+		assertEquals(1, mList.getIndex(mList.get(1).getDateTime()));
+	}
+	
+	public void testYearViews() {
+		List<Memento> year = mList.getMementosForYear(2012);
+		assertEquals(mList.subList(0, 4), year);
+		assertTrue(mList.getMementosForYear(2014).isEmpty());
+		assertEquals(mList.subList(2, 3), mList.getMementosForMonthAndYear(11, 2012));
+		assertNull(mList.getMementosForMonthAndYear(13, 2012));
+		
+		// Years and months start at midnight GMT
+		MementoList list = new MementoList();
+		String[] dates = { "Sat, 31 Dec 2011 23:59:59 GMT", "Sun, 01 Jan 2012 00:00:00 GMT",
+				"Tue, 31 Jan 2012 23:59:59 GMT", "Wed, 01 Feb 2012 00:00:00 GMT" };
+		for (String date : dates) {
+			Memento m = new Memento(new Link(mLinks[0]));
+			m.setDateTime(date);
+			list.add(m);
+		}
+		assertEquals(Integer.valueOf(1), list.getAllYears().get(2011));
+		assertEquals(Integer.valueOf(3), list.getAllYears().get(2012));
+		assertEquals(2, list.getByMonthAndYear(1, 2012).length);
+		assertEquals(1, list.getByMonthAndYear(2, 2012).length);
+		assertEquals(1, list.getByMonthAndYear(12, 2011).length);
+	}
+	
+	public void testYearsWhenUnsorted() {
+		MementoList list = new MementoList();
+		list.add(memento("http://example.org/2005", "Sat, 01 Jan 2005 00:00:00 GMT"));
+		list.add(memento("http://example.org/2001", "Mon, 01 Jan 2001 00:00:00 GMT"));
+		list.add(memento("http://example.org/2003", "Sat, 01 Mar 2003 00:00:00 GMT"));
+		list.add(memento("http://example.org/2001b", "Fri, 01 Jun 2001 00:00:00 GMT"));
+		assertFalse(list.isSorted());
+		assertEquals(Integer.valueOf(2), list.getAllYears().get(2001));
+		Memento[] year = list.getByYear(2001);
+		assertEquals(2, year.length);
+		assertEquals("http://example.org/2001", year[0].getUrl());
+		assertEquals("http://example.org/2001b", year[1].getUrl());
+		assertEquals(1, list.getByYear(2003).length);
+		assertEquals(1, list.getByYear(2005).length);
+		assertEquals(0, list.getByYear(2002).length);
+		assertEquals(1, list.getByMonthAndYear(3, 2003).length);
+		assertEquals(0, list.getByMonthAndYear(2, 2003).length);
+		assertEquals(1, list.getDatesForYear(2005).length);
+		// Not changed by looking
+		assertEquals("http://example.org/2005", list.get(0).getUrl());
+	}
+	
+	public void testYearIndexFollowsSet() {
+		// Move the last memento of 2012 into 2013, keeping the list in order,
+		// after the year index has been built
+		assertEquals(4, mList.getByYear(2012).length);
+		Memento m = new Memento(new Link(mLinks[3]));
+		m.setDateTime("Tue, 01 Jan 2013 00:00:00 GMT");
+		mList.set(3, m);
+		assertTrue(mList.isSorted());
+		assertEquals(3, mList.getByYear(2012).length);
+		assertEquals(2, mList.getByYear(2013).length);
+		assertEquals(m, mList.getByYear(2013)[0]);
+		assertEquals(0, mList.getByMonthAndYear(12, 2012).length);
+	}
+	
+	public void testCountsFollowChanges() {
+		// Move the November 2012 memento to March 2013
+		Memento m = new Memento(new Link(mLinks[2]));
+		m.setDateTime("Fri, 01 Mar 2013 00:00:00 GMT");
+		mList.set(2, m);
+		assertEquals(Integer.valueOf(3), mList.getAllYears().get(2012));
+		assertEquals(Integer.valueOf(2), mList.getAllYears().get(2013));
+		assertNull(mList.getMonthsForYear(2012).get("November"));
+		assertEquals(Integer.valueOf(1), mList.getMonthsForYear(2013).get("March"));
+		
+		assertEquals(3, mList.getByYear(2012).length);
+		assertEquals(2, mList.getByYear(2013).length);
+		assertEquals(1, mList.getByMonthAndYear(3, 2013).length);
+		assertEquals(0, mList.getByMonthAndYear(11, 2012).length);
+		
+		mList.remove(0);
+		assertEquals(Integer.valueOf(1), mList.getMonthsForYear(2012).get("January"));
+		
+		mList.clear();
+		assertTrue(mList.getAllYears().isEmpty());
+		assertTrue(mList.getMonthsForYear(2012).isEmpty());
+	}
+	
+	public void testRange() {
+		MementoRange range = mList.range(new SimpleDateTime("Tue, 01 Jan 2012 00:00:00 GMT"),
+				new SimpleDateTime("Mon, 31 Dec 2012 11:46:54 GMT"));
+		assertEquals(3, range.size());
+		assertEquals(mList.get(0), range.getFirst());
+		assertEquals(mList.get(2), range.getLast());
+		assertEquals(mList.subList(0, 3), range.asList());
+		int i = 0;
+		for (Memento m : range)
+			assertEquals(mList.get(i++), m);
+		assertEquals(3, i);
+		
+		// Navigation stays within the range
+		SimpleDateTime nov = new SimpleDateTime("Sat, 24 Nov 2012 11:28:32 UTC");
+		assertNull(range.getNext(nov));
+		assertEquals(2, range.getIndex(nov));
+		assertTrue(range.isLast(nov));
+		assertEquals(Integer.valueOf(3), range.getAllYears().get(2012));
+		assertNull(range.getAllYears().get(2013));
+		
+		range = mList.range(new SimpleDateTime("Wed, 02 Jan 2013 12:20:44 UTC"),
+				new SimpleDateTime("Tue, 01 Jan 2030 00:00:00 GMT"));
+		assertEquals(0, range.size());
+		assertNull(range.getClosestDate(nov));
+		assertEquals(0, mList.range(nov, mList.getFirst().getDateTime()).size());
+		
+		range = mList.range(mList.getFirst().getDateTime(), nov);
+		mList.remove(4);
+		try {
+			range.size();
+			fail();
+		}
+		catch (ConcurrentModificationException e) {
+		}
+	}
+	
+	public void testDensity() {
+		MementoList list = new MementoList();
+		list.add(memento("a", "Mon, 02 Jan 2012 10:00:00 GMT"));
+		list.add(memento("b", "Tue, 03 Jan 2012 10:00:00 GMT"));
+		list.add(memento("c", "Sun, 08 Jan 2012 23:59:59 GMT"));
+		list.add(memento("d", "Mon, 09 Jan 2012 00:00:00 GMT"));
+		list.add(memento("e", "Thu, 15 Mar 2012 12:00:00 GMT"));
+		
+		SimpleDateTime jan2 = new SimpleDateTime("Mon, 02 Jan 2012 00:00:00 GMT");
+		SimpleDateTime jan4 = new SimpleDateTime("Wed, 04 Jan 2012 00:00:00 GMT");
+		SimpleDateTime jan15 = new SimpleDateTime("Sun, 15 Jan 2012 00:00:00 GMT");
+		SimpleDateTime mar31 = new SimpleDateTime("Sat, 31 Mar 2012 00:00:00 GMT");
+		assertTrue(Arrays.equals(new int[] { 1, 1, 0 }, list.getDensity(jan2, jan4, Granularity.DAY)));
+		assertTrue(Arrays.equals(new int[] { 3, 1 }, list.getDensity(jan2, jan15, Granularity.WEEK)));
+		assertTrue(Arrays.equals(new int[] { 4, 0, 1 }, list.getDensity(jan2, mar31, Granularity.MONTH)));
+		assertTrue(Arrays.equals(new int[] { 0, 5 }, 
+				list.getDensity(new SimpleDateTime(1, 1, 2011), mar31, Granularity.YEAR)));
+		assertEquals(0, list.getDensity(jan4, jan2, Granularity.DAY).length);
+		assertEquals(jan2.getEpochSecond(), Granularity.WEEK.startOf(Granularity.WEEK.bucketOf(jan4.getEpochSecond())));
+		
+		list.remove(0);
+		assertTrue(Arrays.equals(new int[] { 2, 1 }, list.getDensity(jan2, jan15, Granularity.WEEK)));
+	}
+	
+	public void testEnsureSorted() {
+		MementoList list = new MementoList();
+		list.add(memento("b1", "Tue, 01 Jan 2002 00:00:00 GMT"));
+		list.add(memento("b2", "Sat, 01 Jan 2005 00:00:00 GMT"));
+		assertTrue(list.isSorted());
+		list.add(memento("a1", "Mon, 01 Jan 2001 00:00:00 GMT"));
+		list.add(memento("a2", "Tue, 01 Jan 2002 00:00:00 GMT"));
+		list.add(memento("a3", "Wed, 01 Jan 2003 00:00:00 GMT"));
+		list.add(memento("c1", "Thu, 01 Jan 2004 00:00:00 GMT"));
+		assertFalse(list.isSorted());
+		list.setCurrentIndex(1);
+		
+		list.ensureSorted();
+		assertTrue(list.isSorted());
+		String[] urls = { "a1", "b1", "a2", "a3", "c1", "b2" };
+		for (int i = 0; i < urls.length; i++)
+			assertEquals(urls[i], list.get(i).getUrl());
+		assertEquals("b2", list.getCurrent().getUrl());
+		assertEquals("c1", list.getPrevious(new SimpleDateTime("Sat, 01 Jan 2005 00:00:00 GMT")).getUrl());
+		
+		// Changes in the middle of the list are tracked too
+		list.set(2, memento("x", "Sat, 01 Jan 2000 00:00:00 GMT"));
+		assertFalse(list.isSorted());
+		list.set(2, memento("a2", "Tue, 01 Jan 2002 00:00:00 GMT"));
+		assertTrue(list.isSorted());
+		list.add(1, memento("y", "Sat, 01 Jan 2000 00:00:00 GMT"));
+		assertFalse(list.isSorted());
+		list.remove(1);
+		assertTrue(list.isSorted());
+	}
+	
+	public void testEnsureSortedSameAsSort() {
+		Random random = new Random(42);
+		MementoList list = new MementoList();
+		for (int i = 0; i < 1000; i++) {
+			// Runs of up to 50 in order, as from pages of a TimeMap
+			long start = random.nextInt(1000000000);
+			int length = 1 + random.nextInt(50);
+			for (int j = 0; j < length; j++) {
+				Memento m = memento("m" + list.size(), "Mon, 01 Jan 2001 00:00:00 GMT");
+				m.setDateTime(new SimpleDateTime(start + j * random.nextInt(100000)));
+				list.add(m);
+			}
+		}
+		List<Memento> expected = new ArrayList<Memento>(list);
+		Collections.sort(expected);
+		list.ensureSorted();
+		assertEquals(expected, list);
+		for (int i = 0; i < list.size(); i++)
+			assertEquals(expected.get(i).getDateTime().getEpochSecond(), list.getEpochSecond(i));
+	}
+	
+	private Memento memento(String url, String datetime) {
+		Memento m = new Memento(new Link(mLinks[0]));
+		m.setUrl(url);
+		m.setDateTime(datetime);
+		return m;
+	}
+	
+	public void testMerge() {
+		MementoList a = new MementoList();
+		a.add(memento("a1", "Mon, 01 Jan 2001 00:00:00 GMT"));
+		a.add(memento("a2", "Tue, 01 Jan 2002 00:00:00 GMT"));
+		a.add(memento("a3", "Sat, 01 Jan 2005 00:00:00 GMT"));
+		MementoList b = new MementoList();
+		b.add(memento("b1", "Sat, 01 Jan 2000 00:00:00 GMT"));
+		b.add(memento("b2", "Tue, 01 Jan 2002 00:00:00 GMT"));
+		b.add(memento("b3", "Thu, 01 Jan 2004 00:00:00 GMT"));
+		// Not in order, so will be sorted first
+		MementoList c = new MementoList();
+		c.add(memento("c2", "Wed, 01 Jan 2003 00:00:00 GMT"));
+		c.add(memento("c1", "Mon, 01 Jan 2001 00:00:00 GMT"));
+		
+		MementoList merged = MementoList.merge(Arrays.asList(a, new MementoList(), b, c));
+		String[] expected = { "b1", "a1", "a2", "c2", "b3", "a3" };
+		assertEquals(expected.length, merged.size());
+		for (int i = 0; i < expected.length; i++)
+			assertEquals(expected[i], merged.get(i).getUrl());
+		assertTrue(merged.isSorted());
+		assertFalse(c.isSorted());
+		assertEquals("c2", c.get(0).getUrl());
+		
+		assertTrue(MementoList.merge(new ArrayList<MementoList>()).isEmpty());
+	}
+	
+	public void testMergeDedupPolicies() {
+		MementoList a = new MementoList();
+		a.add(memento("a1", "Mon, 01 Jan 2001 00:00:00 GMT"));
+		a.add(memento("a2", "Tue, 01 Jan 2002 00:00:00 GMT"));
+		MementoList b = new MementoList();
+		b.add(memento("b1", "Mon, 01 Jan 2001 00:00:00 GMT"));
+		b.add(memento("b2", "Wed, 01 Jan 2003 00:00:00 GMT"));
+		MementoList c = new MementoList();
+		c.add(memento("c1", "Mon, 01 Jan 2001 00:00:00 GMT"));
+		c.add(memento("c2", "Tue, 01 Jan 2002 00:00:00 GMT"));
+		List<MementoList> runs = Arrays.asList(a, b, c);
+		for (int r = 0; r < runs.size(); r++) {
+			for (Memento m : runs.get(r))
+				m.setArchiveId(r);
+		}
+		
+		assertUrls(new String[] { "a1", "b1", "c1", "a2", "c2", "b2" }, 
+				MementoList.merge(runs, DedupPolicy.KEEP_ALL));
+		assertUrls(new String[] { "a1", "a2", "b2" }, 
+				MementoList.merge(runs, DedupPolicy.ONE_PER_SECOND));
+		MementoList merged = MementoList.merge(runs, DedupPolicy.preferArchive(2));
+		assertUrls(new String[] { "c1", "c2", "b2" }, merged);
+		assertEquals(2, merged.get(0).getArchiveId());
+		assertEquals(Integer.valueOf(1), merged.getAllYears().get(2001));
+	}
+	
+	private static void assertUrls(String[] expected, MementoList mementos) {
+		assertEquals(expected.length, mementos.size());
+		for (int i = 0; i < expected.length; i++)
+			assertEquals(expected[i], mementos.get(i).getUrl());
+	}
 }
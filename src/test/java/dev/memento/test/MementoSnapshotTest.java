@@ -0,0 +1,109 @@
+package dev.memento.test;
+
+/*
+ * #%L
+ * mementoweb-java-client
+ * %%
+ * Copyright (C) 2012 - 2013 The British Library
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import dev.memento.Link;
+import dev.memento.Memento;
+import dev.memento.MementoCursor;
+import dev.memento.MementoList;
+import dev.memento.MementoSnapshot;
+import dev.memento.SimpleDateTime;
+
+public class MementoSnapshotTest {
+
+	private static final String[] DATETIMES = {
+		"Tue, 24 Jul 2001 15:45:04 GMT",
+		"Mon, 10 Sep 2001 20:33:50 GMT",
+		"Tue, 01 Jan 2002 00:00:00 GMT",
+		"Tue, 01 Jan 2002 12:00:00 GMT",
+		"Fri, 14 Mar 2003 08:30:00 GMT"
+	};
+
+	private MementoList list() {
+		MementoList list = new MementoList();
+		for (int i = 0; i < DATETIMES.length; i++)
+			list.add(memento("http://web.archive.org/web/2001072415450" + i + "/http://www.bl.uk/", DATETIMES[i]));
+		list.add(memento("http://example.org/not-a-template", "Sat, 01 May 2004 00:00:00 GMT"));
+		return list;
+	}
+
+	private Memento memento(String url, String datetime) {
+		return new Memento(new Link("<" + url + ">;rel=\"memento\";datetime=\"" + datetime + "\""));
+	}
+
+	@Test
+	public void testSameAsList() {
+		MementoList list = list();
+		MementoSnapshot snapshot = list.snapshot();
+		assertEquals(list.size(), snapshot.size());
+		for (int i = 0; i < list.size(); i++) {
+			assertEquals(list.get(i), snapshot.get(i));
+			assertEquals(list.get(i).getUrl(), snapshot.getUrl(i));
+			assertEquals(list.getEpochSecond(i), snapshot.getEpochSecond(i));
+		}
+		assertEquals(list.getAllYears(), snapshot.getAllYears());
+		assertEquals(list.getMonthsForYear(2002), snapshot.getMonthsForYear(2002));
+		for (String datetime : new String[] { "Mon, 01 Jan 2001 00:00:00 GMT",
+				"Tue, 01 Jan 2002 00:00:00 GMT", "Wed, 01 Jan 2003 00:00:00 GMT",
+				"Sat, 01 Jan 2005 00:00:00 GMT" }) {
+			SimpleDateTime date = new SimpleDateTime(datetime);
+			assertEquals(list.getClosestDate(date), snapshot.getClosestDate(date));
+			assertEquals(list.getNext(date), snapshot.getNext(date));
+			assertEquals(list.getPrevious(date), snapshot.getPrevious(date));
+			assertEquals(list.getIndex(date), snapshot.getIndex(date));
+			assertEquals(list.getIndexByDate(date), snapshot.getIndexByDate(date));
+		}
+	}
+
+	@Test
+	public void testUnchangedByList() {
+		MementoList list = list();
+		MementoSnapshot snapshot = list.snapshot();
+		Memento first = list.getFirst();
+		list.clear();
+		assertEquals(DATETIMES.length + 1, snapshot.size());
+		assertEquals(first, snapshot.getFirst());
+		snapshot.getFirst().setUrl("http://example.org/");
+		assertEquals(first.getUrl(), snapshot.getUrl(0));
+	}
+
+	@Test
+	public void testCursors() {
+		MementoSnapshot snapshot = list().snapshot();
+		MementoCursor a = snapshot.cursor();
+		MementoCursor b = snapshot.cursor();
+		assertNull(a.getCurrent());
+		assertEquals(snapshot.get(0), a.getNext());
+		assertEquals(snapshot.get(1), a.getNext());
+		assertEquals(1, a.getCurrentIndex());
+		assertEquals(-1, b.getCurrentIndex());
+		assertEquals(snapshot.get(2), b.moveTo(new SimpleDateTime("Tue, 01 Jan 2002 00:00:00 GMT")));
+		assertEquals(snapshot.get(1), b.getPrevious());
+		assertEquals(snapshot.get(0), b.getPrevious());
+		assertNull(b.getPrevious());
+		assertEquals(1, a.getCurrentIndex());
+	}
+}
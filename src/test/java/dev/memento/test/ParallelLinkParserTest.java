@@ -0,0 +1,103 @@
+package dev.memento.test;
+
+/*
+ * #%L
+ * mementoweb-java-client
+ * %%
+ * Copyright (C) 2012 - 2013 The British Library
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+import dev.memento.LinkParser;
+import dev.memento.Memento;
+import dev.memento.MementoSink;
+import dev.memento.ParallelLinkParser;
+import dev.memento.SimpleDateTime;
+import dev.memento.TimeBundle;
+import dev.memento.TimeMap;
+
+public class ParallelLinkParserTest {
+
+	/**
+	 * Records everything it is sent as Strings.
+	 */
+	private static class RecordingSink implements MementoSink {
+		List<String> events = new ArrayList<String>();
+		
+		public void onMemento(Memento memento) {
+			events.add(memento.toString());
+		}
+		public void onTimeMap(TimeMap timeMap) {
+			events.add(timeMap.toString());
+		}
+		public void onTimeBundle(TimeBundle timeBundle) {
+			events.add(timeBundle.toString());
+		}
+		public void onOriginal(String url) {
+			events.add(url);
+		}
+	}
+	
+	private String makeTimeMap(int mementos) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("<http://www.bl.uk/>;rel=\"original\",\n");
+		sb.append("<http://example.org/timemap/link/http://www.bl.uk/>;rel=\"self\";type=\"application/link-format\",\n");
+		long t = new SimpleDateTime("Tue, 24 Jul 2001 15:45:04 GMT").getEpochSecond();
+		for (int i = 0; i < mementos; i++) {
+			String rel = i == 0 ? "first memento" : (i == mementos - 1 ? "last memento" : "memento");
+			sb.append("<http://example.org/" + i + "/http://www.bl.uk/?a=1,2;b>;rel=\"" + rel + "\";");
+			// Some unquoted values, which give no boundary to split at
+			if (i % 97 == 0)
+				sb.append("datetime=\"" + new SimpleDateTime(t).longDateFormatted() + "\";license=none,\n");
+			else
+				sb.append("datetime=\"" + new SimpleDateTime(t).longDateFormatted() + "\",\n");
+			t += 3607;
+		}
+		sb.append("<http://example.org/timemap/link/2/http://www.bl.uk/>;rel=\"timemap\";type=\"application/link-format\"\n");
+		return sb.toString();
+	}
+	
+	@Test
+	public void testSameAsSequential() {
+		String timeMap = makeTimeMap(5000);
+		
+		RecordingSink expected = new RecordingSink();
+		int expectedLinks = new LinkParser(timeMap).parse(expected);
+		
+		for (int chunkSize : new int[] { 1, 100, 1000, 100000, 10000000 }) {
+			RecordingSink actual = new RecordingSink();
+			char[] buf = timeMap.toCharArray();
+			int links = new ParallelLinkParser(new ForkJoinPool(4), chunkSize).parse(buf, 0, buf.length, actual);
+			assertEquals(expectedLinks, links);
+			assertEquals(expected.events, actual.events);
+		}
+	}
+	
+	@Test
+	public void testEmpty() {
+		RecordingSink actual = new RecordingSink();
+		assertEquals(0, new ParallelLinkParser().parse(new char[0], 0, 0, actual));
+		assertTrue(actual.events.isEmpty());
+	}
+}
@@ -0,0 +1,71 @@
+package dev.memento.test;
+
+/*
+ * #%L
+ * mementoweb-java-client
+ * %%
+ * Copyright (C) 2012 - 2013 The British Library
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import dev.memento.Link;
+import dev.memento.Memento;
+import dev.memento.Rel;
+
+public class RelTest {
+
+	@Test
+	public void testParse() {
+		assertEquals(Rel.MEMENTO, Rel.parse("memento"));
+		assertEquals(Rel.FIRST | Rel.MEMENTO, Rel.parse("First  Memento"));
+		assertEquals(Rel.FIRST | Rel.PREV | Rel.MEMENTO, Rel.parse("first-memento prev-memento"));
+		assertEquals(Rel.TIMEMAP | Rel.SELF, Rel.parse("self timemap"));
+		assertEquals(Rel.ORIGINAL | Rel.TIMEGATE, Rel.parse("original\ttimegate"));
+		assertEquals(0, Rel.parse("alternate"));
+		assertEquals(0, Rel.parse(""));
+		assertEquals(0, Rel.parse(null));
+	}
+
+	@Test
+	public void testToString() {
+		assertEquals("memento", Rel.toString(Rel.MEMENTO));
+		assertEquals("first last prev next memento",
+				Rel.toString(Rel.NEXT | Rel.PREV | Rel.LAST | Rel.FIRST | Rel.MEMENTO));
+		assertEquals("timemap", Rel.toString(Rel.parse("self timemap")));
+		assertEquals("original", Rel.toString(Rel.parse("original memento")));
+		assertNull(Rel.toString(Rel.FIRST));
+		assertNull(Rel.toString(0));
+	}
+
+	@Test
+	public void testMemento() {
+		Memento memento = new Memento(new Link(
+				"<http://web.archive.org/web/20010724154504/www.harding.edu/fmccown/>;rel=\"last memento prev\";datetime=\"Tue, 24 Jul 2001 15:45:04 GMT\""));
+		assertTrue(memento.isLast());
+		assertTrue(memento.isPrev());
+		assertFalse(memento.isFirst());
+		assertFalse(memento.isNext());
+		assertEquals("last prev memento", memento.getRel());
+
+		memento.setRel("first memento");
+		assertTrue(memento.isFirst());
+		assertFalse(memento.isLast());
+	}
+}
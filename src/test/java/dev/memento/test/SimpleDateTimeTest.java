@@ -21,6 +21,11 @@ package dev.memento.test;
  */
 
 
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
 import dev.memento.SimpleDateTime;
 import junit.framework.TestCase;
 
@@ -59,4 +64,66 @@ public class SimpleDateTimeTest extends TestCase {
 		actual = date1.compareTo(date2);
 		assertTrue(actual > 0);
 	}
+
+	public void testLongDateFormatted() {
+		SimpleDateTime date = new SimpleDateTime("Sat, 22 Dec 2007 09:05:17 GMT");
+		assertEquals("Sat, 22 Dec 2007 09:05:17 GMT", date.longDateFormatted());
+		assertEquals(2007, date.getYear());
+		assertEquals(12, date.getMonth());
+		assertEquals(22, date.getDay());
+		
+		// UTC is treated as GMT
+		date = new SimpleDateTime("Wed, 29 Feb 2012 23:59:59 UTC");
+		assertEquals("Wed, 29 Feb 2012 23:59:59 GMT", date.longDateFormatted());
+		
+		// Agrees with SimpleDateFormat over a wide range of dates
+		SimpleDateFormat formatter = new SimpleDateFormat(SimpleDateTime.PATTERN_RFC1123, Locale.US);
+		formatter.setTimeZone(TimeZone.getTimeZone("GMT"));
+		for (long t = -5000000000L; t < 5000000000L; t += 86399 * 17) {
+			String expected = formatter.format(new Date(t * 1000L));
+			date = new SimpleDateTime(expected);
+			assertEquals(expected, date.longDateFormatted());
+			assertEquals(t * 1000L, date.getDate().getTime());
+		}
+	}
+	
+	public void testLenientFallback() {
+		// Not the fixed layout, so these go through SimpleDateFormat
+		SimpleDateTime date = new SimpleDateTime("Sat, 2 Dec 2007 09:05:17 GMT");
+		assertEquals("Sun, 02 Dec 2007 09:05:17 GMT", date.longDateFormatted());
+		
+		date = new SimpleDateTime("Sat, 22 Dec 2007 10:05:17 +0100");
+		assertEquals("Sat, 22 Dec 2007 09:05:17 GMT", date.longDateFormatted());
+	}
+	
+	public void testValueSemantics() {
+		SimpleDateTime date1 = new SimpleDateTime("Sat, 22 Dec 2007 09:05:17 GMT");
+		SimpleDateTime date2 = new SimpleDateTime(date1.getEpochSecond());
+		assertEquals(date1, date2);
+		assertEquals(date1.hashCode(), date2.hashCode());
+		assertEquals(0, date1.compareTo(date2));
+		
+		SimpleDateTime date3 = new SimpleDateTime("Sat, 22 Dec 2007 09:05:18 GMT");
+		assertFalse(date1.equals(date3));
+		assertTrue(date1.equalsDate(date3));
+		assertEquals(0, date1.compareDateTo(date3));
+		
+		assertEquals(new SimpleDateTime("Sat, 22 Dec 2007 00:00:00 GMT"), new SimpleDateTime(22, 12, 2007));
+		assertEquals("Sat, 22 Dec 2007 23:59:17 GMT", date1.toLastHour().longDateFormatted());
+		assertEquals("Sat, 22 Dec 2007 09:05:17 GMT", date1.longDateFormatted());
+		
+		date1 = new SimpleDateTime("Thu, 31 Dec 1959 23:59:59 GMT");
+		assertEquals(1959, date1.getYear());
+		assertEquals(12, date1.getMonth());
+		assertEquals(31, date1.getDay());
+	}
+	
+	public void testUnparseable() {
+		try {
+			new SimpleDateTime("yesterday");
+			fail("Expected an IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+	}
 }
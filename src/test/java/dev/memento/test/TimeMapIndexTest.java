@@ -0,0 +1,161 @@
+package dev.memento.test;
+
+/*
+ * #%L
+ * mementoweb-java-client
+ * %%
+ * Copyright (C) 2012 - 2013 The British Library
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import dev.memento.LinkParser;
+import dev.memento.Memento;
+import dev.memento.MementoSink;
+import dev.memento.SimpleDateTime;
+import dev.memento.TimeBundle;
+import dev.memento.TimeMap;
+import dev.memento.TimeMapIndex;
+
+public class TimeMapIndexTest {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private String timeMap =
+			"<http://mementoproxy.lanl.gov/aggr/timebundle/http://www.harding.edu/fmccown/>;rel=\"timebundle\",\n" +
+			"<http://www.harding.edu/fmccown/>;rel=\"original\",\n" +
+			"<http://mementoproxy.lanl.gov/aggr/timemap/link/http://www.harding.edu/fmccown/>;rel=\"timemap\";type=\"application/link-format\" ,\n" +
+			"<http://web.archive.org/web/20010724154504/www.harding.edu/fmccown/>;rel=\"first memento\";datetime=\"Tue, 24 Jul 2001 15:45:04 GMT\",\n" +
+			"<http://web.archive.org/web/20010910203350/www.harding.edu/fmccown/?a=1,2;b>; rel = \"memento\" ; datetime=\"Mon, 10 Sep 2001 20:33:50 GMT\",\n" +
+			"<http://web.archive.org/web/20020101000000/www.harding.edu/fmccown/>;rel=memento;license=\"http://example.org/\";datetime=\"Tue, 01 Jan 2002 00:00:00 GMT\"\n";
+
+	@Test
+	public void testSameAsLinkParser() {
+		final List<Memento> expected = new ArrayList<Memento>();
+		new LinkParser(timeMap).parse(new MementoSink() {
+			public void onMemento(Memento memento) {
+				expected.add(memento);
+			}
+			public void onTimeMap(TimeMap timeMap) {
+			}
+			public void onTimeBundle(TimeBundle timeBundle) {
+			}
+			public void onOriginal(String url) {
+			}
+		});
+
+		byte[] bytes = timeMap.getBytes(UTF8);
+		TimeMapIndex index = TimeMapIndex.parse(bytes, 0, bytes.length, UTF8);
+
+		assertEquals(3, index.size());
+		assertEquals(expected, index.asList());
+		for (int i = 0; i < index.size(); i++) {
+			assertEquals(expected.get(i).getUrl(), index.getUrl(i));
+			assertEquals(expected.get(i).getRel(), index.getRel(i));
+			assertEquals(expected.get(i).getDateTime().getEpochSecond(), index.getEpochSecond(i));
+		}
+
+		assertEquals("http://www.harding.edu/fmccown/", index.getOriginal());
+		assertEquals("http://mementoproxy.lanl.gov/aggr/timebundle/http://www.harding.edu/fmccown/",
+				index.getTimeBundle().getUrl());
+		assertEquals(1, index.getTimeMaps().size());
+		assertEquals("application/link-format", index.getTimeMaps().get(0).getType());
+	}
+
+	@Test
+	public void testViews() {
+		byte[] bytes = timeMap.getBytes(UTF8);
+		TimeMapIndex index = TimeMapIndex.parse(bytes, 0, bytes.length, UTF8);
+
+		Memento memento = index.get(0);
+		assertEquals("first memento", memento.getRel());
+		assertEquals(new SimpleDateTime("Tue, 24 Jul 2001 15:45:04 GMT"), memento.getDateTime());
+		assertEquals("Tue, 24 Jul 2001 15:45:04 GMT", memento.getDateTimeString());
+
+		// Setting a value overrides the one in the index
+		memento.setUrl("http://example.org/");
+		assertEquals("http://example.org/", memento.getUrl());
+		assertEquals("http://web.archive.org/web/20010724154504/www.harding.edu/fmccown/", index.getUrl(0));
+	}
+
+	@Test
+	public void testSerializeView() throws Exception {
+		byte[] bytes = timeMap.getBytes(UTF8);
+		Memento memento = TimeMapIndex.parse(bytes, 0, bytes.length, UTF8).get(1);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(out);
+		oos.writeObject(memento);
+		oos.close();
+		Memento copy = (Memento) new ObjectInputStream(new ByteArrayInputStream(out.toByteArray())).readObject();
+		assertEquals(Memento.class, copy.getClass());
+		assertEquals(memento, copy);
+		assertEquals(memento.getUrl(), copy.getUrl());
+	}
+
+	@Test
+	public void testByteBuffer() {
+		byte[] bytes = ("xx" + timeMap).getBytes(UTF8);
+		ByteBuffer heap = ByteBuffer.wrap(bytes);
+		heap.position(2);
+		ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+		direct.put(bytes).flip();
+		direct.position(2);
+
+		TimeMapIndex fromHeap = TimeMapIndex.parse(heap, UTF8);
+		TimeMapIndex fromDirect = TimeMapIndex.parse(direct, UTF8);
+		assertEquals(fromHeap.asList(), fromDirect.asList());
+		assertEquals(3, fromDirect.size());
+		assertEquals(2, direct.position());
+	}
+
+	@Test
+	public void testNonAsciiUrl() {
+		byte[] bytes = "<http://example.org/caf\u00e9>;rel=\"memento\";datetime=\"Tue, 24 Jul 2001 15:45:04 GMT\""
+				.getBytes(UTF8);
+		assertEquals("http://example.org/caf\u00e9", TimeMapIndex.parse(bytes, 0, bytes.length, UTF8).getUrl(0));
+	}
+
+	@Test
+	public void testSkipsMalformedLinks() {
+		byte[] bytes = ("http://no.brackets/;rel=\"memento\"," +
+				"<http://example.org/1>;rel=\"memento\"," +
+				"<http://example.org/2>;rel=\"memento\";datetime=\"not a date\"," +
+				"<http://example.org/3>;rel=\"memento\";datetime=\"Tue, 24 Jul 2001 15:45:04 GMT\"")
+				.getBytes(UTF8);
+		TimeMapIndex index = TimeMapIndex.parse(bytes, 0, bytes.length);
+		assertEquals(1, index.size());
+		assertEquals("http://example.org/3", index.getUrl(0));
+	}
+
+	@Test
+	public void testEmpty() {
+		assertEquals(0, TimeMapIndex.parse(new byte[0], 0, 0).size());
+		assertTrue(TimeMapIndex.parse(new byte[0], 0, 0).asList().isEmpty());
+	}
+}
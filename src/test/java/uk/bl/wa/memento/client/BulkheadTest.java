@@ -0,0 +1,83 @@
+package uk.bl.wa.memento.client;
+
+/*
+ * #%L
+ * MementoWeb Java Client
+ * %%
+ * Copyright (C) 2012 - 2015 The British Library
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Test;
+
+public class BulkheadTest {
+
+	@Test
+	public void testLimits() throws Exception {
+		Bulkhead bulkhead = new Bulkhead("archive", 2, 1, 60000);
+		bulkhead.acquire();
+		assertTrue(bulkhead.acquireAsync().isDone());
+		assertEquals(2, bulkhead.getActive());
+		
+		// The third waits, and the fourth has no room to
+		CompletableFuture<Void> third = bulkhead.acquireAsync();
+		assertFalse(third.isDone());
+		assertEquals(1, bulkhead.getQueued());
+		try {
+			bulkhead.acquire();
+			fail();
+		} catch (BulkheadFullException e) {
+		}
+		
+		// Giving one back passes it to the one waiting
+		bulkhead.release();
+		assertTrue(third.isDone());
+		assertFalse(third.isCompletedExceptionally());
+		assertEquals(2, bulkhead.getActive());
+		assertEquals(0, bulkhead.getQueued());
+		
+		bulkhead.release();
+		bulkhead.release();
+		assertEquals(0, bulkhead.getActive());
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		Bulkhead bulkhead = new Bulkhead("archive", 1, 10, 50);
+		bulkhead.acquire();
+		CompletableFuture<Void> waiting = bulkhead.acquireAsync();
+		try {
+			waiting.get();
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof BulkheadFullException);
+		}
+		assertEquals(0, bulkhead.getQueued());
+		
+		// A cancelled wait is passed over
+		CompletableFuture<Void> cancelled = bulkhead.acquireAsync();
+		CompletableFuture<Void> next = bulkhead.acquireAsync();
+		cancelled.cancel(false);
+		bulkhead.release();
+		assertTrue(next.isDone());
+		assertFalse(next.isCompletedExceptionally());
+		assertEquals(1, bulkhead.getActive());
+	}
+}
@@ -22,12 +22,88 @@ package uk.bl.wa.memento.client;
 
 import static org.junit.Assert.*;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import dev.memento.HttpStatusException;
 import dev.memento.MementoList;
 
 public class MementosAggregatorTest {
 
+	private static final long SLOW_MILLIS = 2000;
+
+	private HttpServer server;
+	private ExecutorService serverExecutor;
+	private AtomicInteger fastRequests = new AtomicInteger();
+	private AtomicInteger slowRequests = new AtomicInteger();
+	private String base;
+
+	@Before
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		base = "http://127.0.0.1:" + server.getAddress().getPort();
+		server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				String path = exchange.getRequestURI().getPath();
+				if (path.equals("/fast/http://www.bl.uk/")) {
+					fastRequests.incrementAndGet();
+					exchange.getResponseHeaders().add("Link", 
+							"<" + base + "/fast/timemap>;rel=\"timemap\";type=\"application/link-format\"");
+					respond(exchange, 302, "");
+				}
+				else if (path.equals("/fast/timemap")) {
+					respond(exchange, 200, 
+							"<" + base + "/web/20010724154504/http://www.bl.uk/>;rel=\"first memento\";datetime=\"Tue, 24 Jul 2001 15:45:04 GMT\",\n" +
+							"<" + base + "/web/20020101000000/http://www.bl.uk/>;rel=\"last memento\";datetime=\"Tue, 01 Jan 2002 00:00:00 GMT\"\n");
+				}
+				else if (path.equals("/slow/http://www.bl.uk/")) {
+					slowRequests.incrementAndGet();
+					try {
+						Thread.sleep(SLOW_MILLIS);
+					} catch (InterruptedException e) {
+					}
+					respond(exchange, 404, "");
+				}
+				else {
+					respond(exchange, 500, "");
+				}
+			}
+		});
+		serverExecutor = Executors.newCachedThreadPool();
+		server.setExecutor(serverExecutor);
+		server.start();
+	}
+
+	private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes("UTF-8");
+		exchange.getResponseHeaders().add("Connection", "close");
+		exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(bytes);
+		out.close();
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+		serverExecutor.shutdownNow();
+	}
+
 	@Test
 	public void testSimpleInvocation() throws InterruptedException {
 		MementosAggregator me = new MementosAggregator();
@@ -35,4 +111,75 @@ public class MementosAggregatorTest {
 		System.out.println("Got "+ms.size()+" mementos.");
 	}
 
+	@Test
+	public void testExecutor() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		MementosAggregator me = new MementosAggregator(executor);
+		assertSame(executor, me.getExecutor());
+		assertNotNull(me.lookup("http://www.bl.uk"));
+		// Not ours to stop
+		me.close();
+		assertFalse(executor.isShutdown());
+		executor.shutdown();
+		
+		me = new MementosAggregator();
+		assertNotNull(me.getExecutor());
+		me.close();
+		assertTrue(me.getExecutor().isShutdown());
+	}
+
+	@Test
+	public void testDeadline() throws Exception {
+		MementosAggregator me = new MementosAggregator();
+		me.setTimeGates(Arrays.asList(base + "/fast/", base + "/slow/", base + "/fail/"));
+		long start = System.currentTimeMillis();
+		LookupResult result = me.lookup("http://www.bl.uk/", 1000, TimeUnit.MILLISECONDS);
+		long elapsed = System.currentTimeMillis() - start;
+		assertTrue(elapsed >= 1000);
+		assertTrue(elapsed < SLOW_MILLIS);
+		assertFalse(result.isComplete());
+		
+		List<ArchiveOutcome> outcomes = result.getOutcomes();
+		assertEquals(3, outcomes.size());
+		for (ArchiveOutcome outcome : outcomes)
+			assertEquals(me.getTimeGate(outcome.getArchiveId()), outcome.getTimeGate());
+		ArchiveOutcome fast = outcomes.get(0);
+		assertEquals(ArchiveOutcome.Status.COMPLETED, fast.getStatus());
+		assertEquals(2, fast.getMementoCount());
+		assertTrue(fast.getElapsedMillis() < 1000);
+		ArchiveOutcome slow = outcomes.get(1);
+		assertEquals(ArchiveOutcome.Status.TIMED_OUT, slow.getStatus());
+		assertTrue(slow.getElapsedMillis() >= 1000);
+		ArchiveOutcome fail = outcomes.get(2);
+		assertEquals(ArchiveOutcome.Status.FAILED, fail.getStatus());
+		assertEquals(500, fail.getStatusCode());
+		assertTrue(fail.getError() instanceof HttpStatusException);
+		
+		assertEquals(2, result.getMementos().size());
+		assertEquals(0, result.getMementos().getFirst().getArchiveId());
+		// The slow lookup was cancelled, giving back its permit
+		assertEquals(0, me.getBulkhead(base + "/slow/").getActive());
+		me.close();
+	}
+
+	@Test
+	public void testDeadlineWhileQueued() throws Exception {
+		MementosAggregator me = new MementosAggregator();
+		me.setTimeGates(Arrays.asList(base + "/slow/", base + "/fast/"));
+		// One lookup at a time at this host, so the fast one waits
+		me.setBulkhead(base + "/", 1, 10, 5000);
+		LookupResult result = me.lookup("http://www.bl.uk/", 500, TimeUnit.MILLISECONDS);
+		for (ArchiveOutcome outcome : result.getOutcomes())
+			assertEquals(ArchiveOutcome.Status.TIMED_OUT, outcome.getStatus());
+		assertTrue(result.getMementos().isEmpty());
+		Bulkhead bulkhead = me.getBulkhead(base + "/");
+		assertEquals(0, bulkhead.getActive());
+		assertEquals(0, bulkhead.getQueued());
+		// Still not started once the slow archive would have answered
+		Thread.sleep(SLOW_MILLIS + 500);
+		assertEquals(1, slowRequests.get());
+		assertEquals(0, fastRequests.get());
+		me.close();
+	}
+
 }